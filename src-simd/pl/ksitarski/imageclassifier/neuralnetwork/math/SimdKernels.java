@@ -0,0 +1,200 @@
+package pl.ksitarski.imageclassifier.neuralnetwork.math;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector kernels implemented with Java Vector API. Requires Java 16 or newer with jdk.incubator.vector module added
+ * (--add-modules jdk.incubator.vector), is only loaded by MatrixMath through reflection when the module is present.
+ * Lives in separate source root (src-simd), compiled against classes of src, so that src itself builds on Java 8.
+ */
+class SimdKernels implements VectorKernels {
+    private static final VectorSpecies<Double> DOUBLE_SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        DoubleVector aVector = DoubleVector.broadcast(DOUBLE_SPECIES, a);
+        int i = 0;
+        for (int bound = DOUBLE_SPECIES.loopBound(length); i < bound; i += DOUBLE_SPECIES.length()) {
+            DoubleVector xVector = DoubleVector.fromArray(DOUBLE_SPECIES, x, xOffset + i);
+            DoubleVector yVector = DoubleVector.fromArray(DOUBLE_SPECIES, y, yOffset + i);
+            xVector.fma(aVector, yVector).intoArray(y, yOffset + i);
+        }
+        for (; i < length; i++) {
+            y[yOffset + i] += a * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public double dot(double[] x, int xOffset, double[] y, int yOffset, int length) {
+        DoubleVector sumVector = DoubleVector.zero(DOUBLE_SPECIES);
+        int i = 0;
+        for (int bound = DOUBLE_SPECIES.loopBound(length); i < bound; i += DOUBLE_SPECIES.length()) {
+            DoubleVector xVector = DoubleVector.fromArray(DOUBLE_SPECIES, x, xOffset + i);
+            DoubleVector yVector = DoubleVector.fromArray(DOUBLE_SPECIES, y, yOffset + i);
+            sumVector = xVector.fma(yVector, sumVector);
+        }
+        double sum = sumVector.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += x[xOffset + i] * y[yOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void subtract(double[] a, int aOffset, double[] b, int bOffset, double[] result, int resultOffset, int length) {
+        int i = 0;
+        for (int bound = DOUBLE_SPECIES.loopBound(length); i < bound; i += DOUBLE_SPECIES.length()) {
+            DoubleVector aVector = DoubleVector.fromArray(DOUBLE_SPECIES, a, aOffset + i);
+            DoubleVector bVector = DoubleVector.fromArray(DOUBLE_SPECIES, b, bOffset + i);
+            aVector.sub(bVector).intoArray(result, resultOffset + i);
+        }
+        for (; i < length; i++) {
+            result[resultOffset + i] = a[aOffset + i] - b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void multiply(double[] a, int aOffset, double[] b, int bOffset, double[] result, int resultOffset, int length) {
+        int i = 0;
+        for (int bound = DOUBLE_SPECIES.loopBound(length); i < bound; i += DOUBLE_SPECIES.length()) {
+            DoubleVector aVector = DoubleVector.fromArray(DOUBLE_SPECIES, a, aOffset + i);
+            DoubleVector bVector = DoubleVector.fromArray(DOUBLE_SPECIES, b, bOffset + i);
+            aVector.mul(bVector).intoArray(result, resultOffset + i);
+        }
+        for (; i < length; i++) {
+            result[resultOffset + i] = a[aOffset + i] * b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void scale(double[] a, int aOffset, double value, double[] result, int resultOffset, int length) {
+        int i = 0;
+        for (int bound = DOUBLE_SPECIES.loopBound(length); i < bound; i += DOUBLE_SPECIES.length()) {
+            DoubleVector.fromArray(DOUBLE_SPECIES, a, aOffset + i).mul(value).intoArray(result, resultOffset + i);
+        }
+        for (; i < length; i++) {
+            result[resultOffset + i] = a[aOffset + i] * value;
+        }
+    }
+
+    @Override
+    public void sigmoid(double[] a, int aOffset, double[] result, int resultOffset, int length) {
+        DoubleVector one = DoubleVector.broadcast(DOUBLE_SPECIES, 1);
+        int i = 0;
+        for (int bound = DOUBLE_SPECIES.loopBound(length); i < bound; i += DOUBLE_SPECIES.length()) {
+            DoubleVector aVector = DoubleVector.fromArray(DOUBLE_SPECIES, a, aOffset + i);
+            one.div(aVector.neg().lanewise(VectorOperators.EXP).add(1)).intoArray(result, resultOffset + i);
+        }
+        for (; i < length; i++) {
+            result[resultOffset + i] = NLMath.activationFunction(a[aOffset + i]);
+        }
+    }
+
+    @Override
+    public void sigmoidDerivative(double[] a, int aOffset, double[] result, int resultOffset, int length) {
+        int i = 0;
+        for (int bound = DOUBLE_SPECIES.loopBound(length); i < bound; i += DOUBLE_SPECIES.length()) {
+            DoubleVector aVector = DoubleVector.fromArray(DOUBLE_SPECIES, a, aOffset + i);
+            aVector.mul(aVector.neg().add(1)).intoArray(result, resultOffset + i);
+        }
+        for (; i < length; i++) {
+            result[resultOffset + i] = NLMath.activationFunctionDerivative(a[aOffset + i]);
+        }
+    }
+
+    @Override
+    public void axpy(float a, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        FloatVector aVector = FloatVector.broadcast(FLOAT_SPECIES, a);
+        int i = 0;
+        for (int bound = FLOAT_SPECIES.loopBound(length); i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector xVector = FloatVector.fromArray(FLOAT_SPECIES, x, xOffset + i);
+            FloatVector yVector = FloatVector.fromArray(FLOAT_SPECIES, y, yOffset + i);
+            xVector.fma(aVector, yVector).intoArray(y, yOffset + i);
+        }
+        for (; i < length; i++) {
+            y[yOffset + i] += a * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public float dot(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        FloatVector sumVector = FloatVector.zero(FLOAT_SPECIES);
+        int i = 0;
+        for (int bound = FLOAT_SPECIES.loopBound(length); i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector xVector = FloatVector.fromArray(FLOAT_SPECIES, x, xOffset + i);
+            FloatVector yVector = FloatVector.fromArray(FLOAT_SPECIES, y, yOffset + i);
+            sumVector = xVector.fma(yVector, sumVector);
+        }
+        float sum = sumVector.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += x[xOffset + i] * y[yOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void subtract(float[] a, int aOffset, float[] b, int bOffset, float[] result, int resultOffset, int length) {
+        int i = 0;
+        for (int bound = FLOAT_SPECIES.loopBound(length); i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector aVector = FloatVector.fromArray(FLOAT_SPECIES, a, aOffset + i);
+            FloatVector bVector = FloatVector.fromArray(FLOAT_SPECIES, b, bOffset + i);
+            aVector.sub(bVector).intoArray(result, resultOffset + i);
+        }
+        for (; i < length; i++) {
+            result[resultOffset + i] = a[aOffset + i] - b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void multiply(float[] a, int aOffset, float[] b, int bOffset, float[] result, int resultOffset, int length) {
+        int i = 0;
+        for (int bound = FLOAT_SPECIES.loopBound(length); i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector aVector = FloatVector.fromArray(FLOAT_SPECIES, a, aOffset + i);
+            FloatVector bVector = FloatVector.fromArray(FLOAT_SPECIES, b, bOffset + i);
+            aVector.mul(bVector).intoArray(result, resultOffset + i);
+        }
+        for (; i < length; i++) {
+            result[resultOffset + i] = a[aOffset + i] * b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void scale(float[] a, int aOffset, float value, float[] result, int resultOffset, int length) {
+        int i = 0;
+        for (int bound = FLOAT_SPECIES.loopBound(length); i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector.fromArray(FLOAT_SPECIES, a, aOffset + i).mul(value).intoArray(result, resultOffset + i);
+        }
+        for (; i < length; i++) {
+            result[resultOffset + i] = a[aOffset + i] * value;
+        }
+    }
+
+    @Override
+    public void sigmoid(float[] a, int aOffset, float[] result, int resultOffset, int length) {
+        FloatVector one = FloatVector.broadcast(FLOAT_SPECIES, 1);
+        int i = 0;
+        for (int bound = FLOAT_SPECIES.loopBound(length); i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector aVector = FloatVector.fromArray(FLOAT_SPECIES, a, aOffset + i);
+            one.div(aVector.neg().lanewise(VectorOperators.EXP).add(1)).intoArray(result, resultOffset + i);
+        }
+        for (; i < length; i++) {
+            result[resultOffset + i] = (float) NLMath.activationFunction(a[aOffset + i]);
+        }
+    }
+
+    @Override
+    public void sigmoidDerivative(float[] a, int aOffset, float[] result, int resultOffset, int length) {
+        int i = 0;
+        for (int bound = FLOAT_SPECIES.loopBound(length); i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector aVector = FloatVector.fromArray(FLOAT_SPECIES, a, aOffset + i);
+            aVector.mul(aVector.neg().add(1)).intoArray(result, resultOffset + i);
+        }
+        for (; i < length; i++) {
+            result[resultOffset + i] = (float) NLMath.activationFunctionDerivative(a[aOffset + i]);
+        }
+    }
+}
@@ -10,6 +10,8 @@ import pl.ksitarski.imageclassifier.imageclassifier.Classifier;
 import pl.ksitarski.imageclassifier.neuralnetwork.Logger;
 import pl.ksitarski.imageclassifier.neuralnetwork.NeuralNetwork;
 import pl.ksitarski.imageclassifier.neuralnetwork.helper.LearningCaseHelper;
+import pl.ksitarski.imageclassifier.neuralnetwork.helper.TrainingFuture;
+import pl.ksitarski.imageclassifier.neuralnetwork.helper.TrainingScheduler;
 import pl.ksitarski.imageclassifier.othertools.IO;
 
 import java.io.File;
@@ -78,7 +80,7 @@ public class Gui {
 
 
     private Classifier classifier;
-    private WorkingInterface workingInterface;
+    private TrainingFuture<Void> trainingFuture;
 
     /**
      * Proposes sample values for network in GUI.
@@ -141,7 +143,7 @@ public class Gui {
             }
         });
         Platform.runLater(() -> {
-            stopConditionChoice.getItems().addAll("Iterations", "Error difference", "Error");
+            stopConditionChoice.getItems().addAll("Iterations", "Error difference", "Error", "Updates");
             stopConditionChoice.getSelectionModel().select(0);
         });
 
@@ -162,6 +164,9 @@ public class Gui {
                     case 2:
                         stopConditionValueField.setText("0.01");
                         break;
+                    case 3: //updates
+                        stopConditionValueField.setText("2000");
+                        break;
                 }
             }
         });
@@ -190,6 +195,9 @@ public class Gui {
                     break;
                 case 2:
                     learningStopConditionType = NeuralNetwork.LearningStopConditionType.ERROR;
+                    break;
+                case 3:
+                    learningStopConditionType = NeuralNetwork.LearningStopConditionType.UPDATE;
             }
 
             stopConditionValue = Double.parseDouble(stopConditionValueField.getText());
@@ -271,7 +279,7 @@ public class Gui {
         if (!parseArgs()) {
             return;
         }
-        new Thread(() -> {
+        trainingFuture = TrainingScheduler.getInstance().submit(workingInterface -> {
             boolean alreadyExisting = true;
             if (classifier == null) {
                 try {
@@ -283,7 +291,7 @@ public class Gui {
                 } catch (Exception e) {
                     getLogger().log("Error was caught, check if your settings are correct:");
                     getLogger().log(e.toString());
-                    return;
+                    return null;
                 }
                 learningCaseHelper = classifier.getLearningCaseHelper();
                 categories = classifier.getCategoriesCount();
@@ -295,7 +303,6 @@ public class Gui {
                 classifier.setAdjustedLearningRate(learningRate);
                 classifier.setManaged(useBackups);
             }
-            workingInterface = new WorkingInterface();
             NeuralNetwork.LearningStopConditionTarget learningStopConditionTarget = new NeuralNetwork.LearningStopConditionTarget();
             learningStopConditionTarget.learningStopConditionType = learningStopConditionType;
             learningStopConditionTarget.val = stopConditionValue;
@@ -306,7 +313,8 @@ public class Gui {
                 e.printStackTrace();
                 getLogger().log(e.getMessage());
             }
-        }).start();
+            return null;
+        });
     }
 
     /**
@@ -335,8 +343,8 @@ public class Gui {
      */
     @FXML
     void stopPress(ActionEvent event) {
-        if (workingInterface != null) {
-            workingInterface.isWorking = false;
+        if (trainingFuture != null) {
+            trainingFuture.cancel(false);
         }
     }
 
@@ -378,17 +386,4 @@ public class Gui {
         }).start();
     }
 
-    /**
-     * Implementation of interface that safely stops neural network mid-progress. This implementation depends on user
-     * actions.
-     */
-    private static class WorkingInterface implements NeuralNetwork.WorkingInterface {
-        private boolean isWorking = true;
-        @Override
-        public boolean isContinueLearning() {
-            return isWorking;
-        }
-    }
-
-
 }
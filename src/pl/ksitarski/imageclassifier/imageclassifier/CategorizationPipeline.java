@@ -0,0 +1,157 @@
+package pl.ksitarski.imageclassifier.imageclassifier;
+
+import pl.ksitarski.imageclassifier.othertools.IO;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Staged categorization of many files. Decoding and scaling of images runs on pool of workers, which feed bounded
+ * queue. Calling thread takes decoded images from the queue in batches (as many as are ready, up to batch size),
+ * categorizes every batch with single pass through the network and passes results to sink. Workers wait when queue is
+ * full, so memory use does not depend on number of files.
+ */
+public class CategorizationPipeline {
+    private final Categorizer categorizer;
+    private final int decodeThreads;
+    private final int batchSize;
+
+    /**
+     * Constructor.
+     * @param categorizer classifier used for categorization
+     * @param decodeThreads number of workers that decode and scale images
+     * @param batchSize biggest number of images categorized at once
+     */
+    public CategorizationPipeline(Categorizer categorizer, int decodeThreads, int batchSize) {
+        if (decodeThreads < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Decode threads and batch size should be positive, were " + decodeThreads + " and " + batchSize);
+        }
+        this.categorizer = categorizer;
+        this.decodeThreads = decodeThreads;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Pipeline with one decoding worker per processor and batches of 64 images.
+     */
+    public CategorizationPipeline(Categorizer categorizer) {
+        this(categorizer, Runtime.getRuntime().availableProcessors(), 64);
+    }
+
+    /**
+     * Categorizes all files and passes results to sink, in order in which they are ready. Sink is called only from
+     * calling thread.
+     * @param filesByCategory files divided by expected category (index of list)
+     * @param sink receiver of results
+     */
+    public void run(List<List<File>> filesByCategory, CategorizationSink sink) throws InterruptedException {
+        List<File> files = new ArrayList<>();
+        List<Integer> expectedCategories = new ArrayList<>();
+        for (int category = 0; category < filesByCategory.size(); category++) {
+            for (File file : filesByCategory.get(category)) {
+                files.add(file);
+                expectedCategories.add(category);
+            }
+        }
+
+        BlockingQueue<DecodedFile> queue = new ArrayBlockingQueue<>(batchSize * 2);
+        AtomicInteger nextFile = new AtomicInteger();
+        ExecutorService decoders = Executors.newFixedThreadPool(decodeThreads, runnable -> {
+            Thread thread = new Thread(runnable, "categorization-decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < decodeThreads; i++) {
+                decoders.execute(() -> {
+                    int index;
+                    while ((index = nextFile.getAndIncrement()) < files.size()) {
+                        DecodedFile decodedFile;
+                        try {
+                            decodedFile = decode(files.get(index), expectedCategories.get(index));
+                        } catch (Throwable e) {
+                            //every file must reach the queue (consumer counts them), even if decoding ran out of memory
+                            decodedFile = new DecodedFile(files.get(index), expectedCategories.get(index), null);
+                        }
+                        try {
+                            queue.put(decodedFile);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                });
+            }
+
+            List<DecodedFile> batch = new ArrayList<>(batchSize);
+            List<double[]> data = new ArrayList<>(batchSize);
+            int done = 0;
+            while (done < files.size()) {
+                batch.clear();
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                done += batch.size();
+
+                data.clear();
+                for (DecodedFile decodedFile : batch) {
+                    if (decodedFile.data == null) {
+                        sink.accept(decodedFile.file, decodedFile.expectedCategory, null, -1);
+                    } else {
+                        data.add(decodedFile.data);
+                    }
+                }
+                if (data.isEmpty()) {
+                    continue;
+                }
+                CategorizationResult result = categorizer.categorizeBatch(data);
+                int index = 0;
+                for (DecodedFile decodedFile : batch) {
+                    if (decodedFile.data != null) {
+                        sink.accept(decodedFile.file, decodedFile.expectedCategory, result, index++);
+                    }
+                }
+            }
+        } finally {
+            decoders.shutdownNow();
+        }
+    }
+
+    private DecodedFile decode(File file, int expectedCategory) {
+        Optional<BufferedImage> image = IO.getImage(file);
+        return new DecodedFile(file, expectedCategory, image.isPresent() ? categorizer.preprocess(image.get()) : null);
+    }
+
+    /**
+     * Receiver of categorization results.
+     */
+    @FunctionalInterface
+    public interface CategorizationSink {
+        /**
+         * Receives result of single file.
+         * @param file categorized file
+         * @param expectedCategory category that file was listed under
+         * @param result result of batch that contained this file, or null if file could not be loaded
+         * @param index index of file in result batch
+         */
+        void accept(File file, int expectedCategory, CategorizationResult result, int index);
+    }
+
+    private static class DecodedFile {
+        private final File file;
+        private final int expectedCategory;
+        private final double[] data; //null if file could not be loaded
+
+        DecodedFile(File file, int expectedCategory, double[] data) {
+            this.file = file;
+            this.expectedCategory = expectedCategory;
+            this.data = data;
+        }
+    }
+}
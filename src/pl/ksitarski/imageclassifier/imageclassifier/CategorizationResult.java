@@ -0,0 +1,90 @@
+package pl.ksitarski.imageclassifier.imageclassifier;
+
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Matrix;
+
+/**
+ * Result of categorization of batch of inputs: most likely category of every input and scores (outputs of network)
+ * of all categories.
+ */
+public class CategorizationResult {
+    private final Matrix scores; //one row per input, one column per category
+    private final int[] categories;
+
+    /**
+     * Default constructor.
+     * @param scores outputs of network, one row per input
+     */
+    public CategorizationResult(Matrix scores) {
+        this.scores = scores;
+        categories = new int[scores.getHeight()];
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = scores.getBiggestIdInRow(i);
+        }
+    }
+
+    /**
+     * Returns number of categorized inputs.
+     */
+    public int size() {
+        return categories.length;
+    }
+
+    public int getCategoryCount() {
+        return scores.getWidth();
+    }
+
+    /**
+     * Returns most likely category of given input.
+     */
+    public int getCategory(int input) {
+        return categories[input];
+    }
+
+    /**
+     * Returns given number of most likely categories of given input, best first.
+     */
+    public int[] getTopCategories(int input, int count) {
+        count = Math.min(count, getCategoryCount());
+        int[] top = new int[count];
+        for (int i = 0; i < count; i++) {
+            int best = -1;
+            for (int category = 0; category < getCategoryCount(); category++) {
+                if (!contains(top, i, category) && (best == -1 || scores.get(category, input) > scores.get(best, input))) {
+                    best = category;
+                }
+            }
+            top[i] = best;
+        }
+        return top;
+    }
+
+    private static boolean contains(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns score of most likely category of given input.
+     */
+    public double getScore(int input) {
+        return scores.get(categories[input], input);
+    }
+
+    /**
+     * Returns score of given category for given input.
+     */
+    public double getScore(int input, int category) {
+        return scores.get(category, input);
+    }
+
+    /**
+     * Returns scores of all categories for given input.
+     */
+    public double[] getScores(int input) {
+        return scores.getRow(input);
+    }
+}
@@ -0,0 +1,19 @@
+package pl.ksitarski.imageclassifier.imageclassifier;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Anything that can categorize batches of images: trained classifier or its compiled, inference only form.
+ */
+public interface Categorizer {
+    /**
+     * Converts image to data accepted by this categorizer.
+     */
+    double[] preprocess(BufferedImage image);
+
+    /**
+     * Categorizes batch of preprocessed images at once.
+     */
+    CategorizationResult categorizeBatch(List<double[]> data);
+}
@@ -0,0 +1,38 @@
+package pl.ksitarski.imageclassifier.imageclassifier;
+
+import pl.ksitarski.imageclassifier.neuralnetwork.helper.LearningCaseHelper;
+import pl.ksitarski.imageclassifier.neuralnetwork.helper.NeuralNetworkHelper;
+
+/**
+ * Checkpoint of classifier: snapshot of its network(s) with optimizer state, iteration count and learning rate. Learning
+ * cases are not part of checkpoint, it only holds name of file with them (in the same directory), so that they are
+ * written once instead of with every checkpoint.
+ */
+class Checkpoint {
+    private final String dataset;
+    private final int imageSize;
+    private final boolean colors;
+    private final NeuralNetworkHelper neuralNetworkHelper;
+
+    /**
+     * Creates checkpoint of current state of given classifier, that is not affected by further training.
+     * @param dataset name of file with learning cases of classifier
+     */
+    Checkpoint(String dataset, Classifier classifier) {
+        this.dataset = dataset;
+        this.imageSize = classifier.getImageSize();
+        this.colors = classifier.isColors();
+        this.neuralNetworkHelper = classifier.getNeuralNetworkHelper().snapshot();
+    }
+
+    String getDataset() {
+        return dataset;
+    }
+
+    /**
+     * Restores classifier from this checkpoint with given learning cases.
+     */
+    Classifier toClassifier(LearningCaseHelper learningCaseHelper) {
+        return new Classifier(imageSize, colors, learningCaseHelper, neuralNetworkHelper);
+    }
+}
@@ -0,0 +1,147 @@
+package pl.ksitarski.imageclassifier.imageclassifier;
+
+import pl.ksitarski.imageclassifier.neuralnetwork.NeuralNetwork;
+import pl.ksitarski.imageclassifier.neuralnetwork.helper.LearningCaseHelper;
+import pl.ksitarski.imageclassifier.othertools.IO;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static pl.ksitarski.imageclassifier.neuralnetwork.LoggerSettings.*;
+
+/**
+ * Takes periodic checkpoints of classifier during training. Snapshot of network (weights, optimizer state, iteration
+ * count and learning rate) is taken on training thread between iterations, and written on background thread, so that
+ * training does not wait for disk. If previous checkpoint is still being written, checkpoint is skipped. Learning
+ * cases are written only once, to separate file that checkpoints refer to.
+ */
+public class Checkpointer implements NeuralNetwork.CheckpointListener {
+    private static final String FILE_NAME = "checkpoint.json";
+    private static final String DATASET_FILE_NAME = "dataset.json";
+
+    private final Classifier classifier;
+    private final File file;
+    private final File datasetFile;
+    private final int everyIterations;
+    private final long everyMillis;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean isWriting = new AtomicBoolean(false);
+    private volatile Future<?> lastWrite;
+
+    private int lastIteration = -1;
+    private long lastTime = System.currentTimeMillis();
+
+    /**
+     * Constructor, see Classifier.enableCheckpoints.
+     */
+    Checkpointer(Classifier classifier, File directory, int everyIterations, long everyMillis) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create checkpoint directory " + directory);
+        }
+        this.classifier = classifier;
+        this.file = new File(directory, FILE_NAME);
+        this.datasetFile = new File(directory, DATASET_FILE_NAME);
+        this.everyIterations = everyIterations;
+        this.everyMillis = everyMillis;
+        isWriting.set(true);
+        lastWrite = writer.submit(() -> {
+            try {
+                IO.saveJson(classifier.getLearningCaseHelper(), datasetFile);
+            } catch (IOException e) {
+                getLogger().log("Saving learning cases for checkpoints failed: " + e);
+            } finally {
+                isWriting.set(false);
+            }
+        });
+    }
+
+    /**
+     * Loads classifier from latest checkpoint in given directory. Next training of returned classifier continues with
+     * learning rate from checkpoint.
+     */
+    public static Optional<Classifier> resumeLatest(File directory) {
+        File file = new File(directory, FILE_NAME);
+        if (!file.isFile()) {
+            return Optional.empty();
+        }
+        Optional<Checkpoint> checkpoint = IO.loadJson(file, Checkpoint.class);
+        if (!checkpoint.isPresent()) {
+            return Optional.empty();
+        }
+        Optional<LearningCaseHelper> learningCaseHelper = IO.loadJson(new File(directory, checkpoint.get().getDataset()), LearningCaseHelper.class);
+        if (!learningCaseHelper.isPresent()) {
+            getLogger().log("Learning cases of checkpoint not found: " + checkpoint.get().getDataset());
+            return Optional.empty();
+        }
+        Optional<Classifier> classifier = Optional.of(checkpoint.get().toClassifier(learningCaseHelper.get()));
+        classifier.ifPresent(c -> {
+            c.setResumed();
+            getLogger().log("Resumed from checkpoint at iteration " + c.getTotalIterations());
+        });
+        return classifier;
+    }
+
+    @Override
+    public void onIteration(int totalIterations) {
+        if (lastIteration < 0) {
+            lastIteration = totalIterations;
+        }
+        long now = System.currentTimeMillis();
+        boolean isDue = (everyIterations > 0 && totalIterations - lastIteration >= everyIterations)
+                || (everyMillis > 0 && now - lastTime >= everyMillis);
+        if (!isDue || !isWriting.compareAndSet(false, true)) {
+            return;
+        }
+        lastIteration = totalIterations;
+        lastTime = now;
+        Checkpoint checkpoint = new Checkpoint(DATASET_FILE_NAME, classifier);
+        try {
+            lastWrite = writer.submit(() -> {
+                try {
+                    IO.saveJson(checkpoint, file);
+                    getLogger().log("Checkpoint saved at iteration " + totalIterations);
+                } catch (IOException e) {
+                    getLogger().log("Saving checkpoint failed: " + e);
+                } finally {
+                    isWriting.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //closed while training thread was still notifying this checkpointer
+            isWriting.set(false);
+        }
+    }
+
+    /**
+     * Stops writer thread once checkpoint that is being written (if any) is saved. No further checkpoints are taken.
+     */
+    public void close() {
+        writer.shutdown();
+    }
+
+    /**
+     * Waits until checkpoint that is being written (if any) is saved.
+     */
+    public void awaitWrite() throws InterruptedException {
+        Future<?> write = lastWrite;
+        if (write == null) {
+            return;
+        }
+        try {
+            write.get();
+        } catch (ExecutionException e) {
+            getLogger().log("Saving checkpoint failed: " + e.getCause());
+        }
+    }
+}
@@ -3,27 +3,34 @@ package pl.ksitarski.imageclassifier.imageclassifier;
 import pl.ksitarski.imageclassifier.neuralnetwork.NeuralNetwork;
 import pl.ksitarski.imageclassifier.neuralnetwork.helper.LearningCaseHelper;
 import pl.ksitarski.imageclassifier.neuralnetwork.helper.NeuralNetworkHelper;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.ActivationFunction;
 import pl.ksitarski.imageclassifier.neuralnetwork.math.Matrix;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Optimizer;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Precision;
 import pl.ksitarski.imageclassifier.othertools.IO;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.SplittableRandom;
 
 import static pl.ksitarski.imageclassifier.neuralnetwork.LoggerSettings.*;
 
 /**
  * Classifier layer (decorator) on top of neural network. Is responsible for generating data for NN and selecting argument.
  */
-public class Classifier {
+public class Classifier implements Categorizer {
 
     private final int imageSize;
     private final boolean colors;
     private final LearningCaseHelper learningCaseHelper;
     private final NeuralNetworkHelper neuralNetworkHelper;
+    private transient Checkpointer checkpointer;
 
     /**
      * Default constructor
@@ -38,6 +45,24 @@ public class Classifier {
      * @param multistart number of multistart threads or 1
      */
     public Classifier(List<List<File>> filesByClassifier, int scaledSize, int layers, int[] neuronsInLayer, double learningRate, boolean colors, double adjustLearningRate, boolean isManaged, int multistart) {
+        this(filesByClassifier, scaledSize, layers, neuronsInLayer, learningRate, colors, adjustLearningRate, isManaged, multistart, Precision.DOUBLE, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Constructor
+     * @param filesByClassifier files divided in categories by class
+     * @param scaledSize size to which files will be scaled
+     * @param layers numbers of layers in neural network
+     * @param neuronsInLayer description of number of neurons per layer in neural network
+     * @param learningRate learning rate
+     * @param colors specifies whether colors will be used
+     * @param adjustLearningRate adjustment made by neural network after mistake
+     * @param isManaged whether learning should be controlled by internal algorithm
+     * @param multistart number of multistart threads or 1
+     * @param precision precision of loaded images, network weights and computations
+     * @param seed seed for random initialization of networks
+     */
+    public Classifier(List<List<File>> filesByClassifier, int scaledSize, int layers, int[] neuronsInLayer, double learningRate, boolean colors, double adjustLearningRate, boolean isManaged, int multistart, Precision precision, long seed) {
         this.imageSize = scaledSize;
         this.colors = colors;
         int categories = filesByClassifier.size();
@@ -47,7 +72,7 @@ public class Classifier {
         }
 
         int inputs = colors ? scaledSize * scaledSize * 3 : scaledSize * scaledSize;
-        learningCaseHelper = new LearningCaseHelper(entries, inputs, categories);
+        learningCaseHelper = new LearningCaseHelper(entries, inputs, categories, precision);
 
         int categoryId = 0;
         for (List<File> fileList : filesByClassifier) {
@@ -72,7 +97,7 @@ public class Classifier {
             categoryId++;
         }
         learningCaseHelper.trim();
-        neuralNetworkHelper = new NeuralNetworkHelper(layers, neuronsInLayer, inputs, categories, learningRate, adjustLearningRate, 2.0, isManaged, multistart);
+        neuralNetworkHelper = new NeuralNetworkHelper(layers, neuronsInLayer, inputs, categories, learningRate, adjustLearningRate, 2.0, isManaged, multistart, precision, seed);
     }
 
     /**
@@ -89,11 +114,82 @@ public class Classifier {
      * @param useColors whether classifier should use color information
      */
     public Classifier(LearningCaseHelper learningCaseHelper, int scaledSize, int layers, int[] neurons, double learningRate, boolean useColors, double learningRateAdjustment, boolean isManaged, int multistart, int categories) {
+        this(learningCaseHelper, scaledSize, layers, neurons, learningRate, useColors, learningRateAdjustment, isManaged, multistart, categories, learningCaseHelper.getInput().getPrecision(), new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Classifier that uses exisiting LearningCaseHelper (for example reuses files), with network of given precision.
+     * @param learningCaseHelper data that was already loaded
+     * @param scaledSize size to which files will be scaled
+     * @param layers numbers of layers in neural network
+     * @param learningRateAdjustment adjustment made by neural network after mistake
+     * @param learningRate learning rate
+     * @param isManaged whether learning should be controlled by internal algorithm
+     * @param multistart number of multistart threads or 1
+     * @param categories number of categories for classifier
+     * @param neurons description of neuron count by layer
+     * @param useColors whether classifier should use color information
+     * @param precision precision of network weights and computations
+     * @param seed seed for random initialization of networks
+     */
+    public Classifier(LearningCaseHelper learningCaseHelper, int scaledSize, int layers, int[] neurons, double learningRate, boolean useColors, double learningRateAdjustment, boolean isManaged, int multistart, int categories, Precision precision, long seed) {
         this.imageSize = scaledSize;
         this.colors = useColors;
         this.learningCaseHelper = learningCaseHelper;
         int inputs = colors ? scaledSize * scaledSize * 3 : scaledSize * scaledSize;
-        neuralNetworkHelper = new NeuralNetworkHelper(layers, neurons, inputs, categories, learningRate, learningRateAdjustment, 2.0, isManaged, multistart);
+        neuralNetworkHelper = new NeuralNetworkHelper(layers, neurons, inputs, categories, learningRate, learningRateAdjustment, 2.0, isManaged, multistart, precision, seed);
+    }
+
+    /**
+     * Constructor from parts, used to restore classifier from checkpoint.
+     */
+    Classifier(int imageSize, boolean colors, LearningCaseHelper learningCaseHelper, NeuralNetworkHelper neuralNetworkHelper) {
+        this.imageSize = imageSize;
+        this.colors = colors;
+        this.learningCaseHelper = learningCaseHelper;
+        this.neuralNetworkHelper = neuralNetworkHelper;
+    }
+
+    NeuralNetworkHelper getNeuralNetworkHelper() {
+        return neuralNetworkHelper;
+    }
+
+    /**
+     * Enables periodic checkpoints of this classifier, written on background thread to given directory. Checkpoint is
+     * taken every given number of iterations or after given time passes, whichever happens first; 0 disables given
+     * trigger. Replaces checkpoints enabled before.
+     * @return checkpointer, that can be used to wait for last checkpoint
+     */
+    public Checkpointer enableCheckpoints(File directory, int everyIterations, long everyMillis) {
+        Checkpointer previous = checkpointer;
+        checkpointer = new Checkpointer(this, directory, everyIterations, everyMillis);
+        neuralNetworkHelper.setCheckpointListener(checkpointer);
+        if (previous != null) {
+            previous.close();
+        }
+        return checkpointer;
+    }
+
+    /**
+     * Disables periodic checkpoints. Checkpoint that is being written is still saved.
+     */
+    public void disableCheckpoints() {
+        neuralNetworkHelper.setCheckpointListener(null);
+        if (checkpointer != null) {
+            checkpointer.close();
+            checkpointer = null;
+        }
+    }
+
+    /**
+     * Marks classifier (loaded from checkpoint) so that next training continues with learning rate from checkpoint.
+     */
+    void setResumed() {
+        neuralNetworkHelper.setResumed();
+    }
+
+    int getTotalIterations() {
+        return neuralNetworkHelper.getTotalIterations();
     }
 
     /**
@@ -111,81 +207,96 @@ public class Classifier {
      * Tests categorization against testing data and writes information to logger.
      */
     public void categorizeTest(List<List<File>> input) {
-        int expectedCategory = 0;
-        int guesses = 0;
-        int misses = 0;
-        int failed = 0;
-        for (List<File> category : input) {
-            getLogger().log("==========");
-            getLogger().log("Categorizing for category: " + expectedCategory);
-
-            for (File file : category) {
-                getLogger().log("Categorizing file " + file.getName() + " of category " + expectedCategory);
-                Matrix m = categorizeFile(file);
-                if (m == null) {
-                    getLogger().log("Failed to load file:" + file.getName());
-                    failed++;
-                } else {
-                    m.writeRow(0);
-                    int biggest = m.getBiggestIdInRow(0);
-                    if (biggest != expectedCategory) {
-                        misses++;
-                        getLogger().log("Mismatched file");
-                    } else {
-                        guesses++;
-                        getLogger().log("Matched file");
-                    }
-                }
-                getLogger().log("____");
-            }
-            expectedCategory++;
-        }
-        getLogger().log("+++++++++++++++++++++");
-        getLogger().log("Finished categorization test");
-        getLogger().log("+++++++++++++++++++++");
-        getLogger().log("Checked files: " + (guesses + misses));
-        getLogger().log("Correctly guessed: " + guesses);
-        getLogger().log("Incorrectly guessed: " + misses);
-        getLogger().log("Failed to load: " + failed);
+        categorizeAndLog(input, true);
     }
 
     /**
      * Categorizes unknown input and writes information to logger.
      */
     public void categorize(List<List<File>> input) {
-        getLogger().log("==========");
-        int failed = 0;
-        for (List<File> category : input) {
-            for (File file : category) {
-                getLogger().log("Categorizing file " + file.getName());
-                Matrix m = categorizeFile(file);
-                if (m == null) {
-                    getLogger().log("Failed to load file:" + file.getName());
-                    failed++;
-                } else {
-                    m.writeRow(0);
-                    int biggest = m.getBiggestIdInRow(0);
-                    getLogger().log("Most likely category " + biggest + " with value " + m.get(biggest, 0));
+        categorizeAndLog(input, false);
+    }
+
+    /**
+     * Categorizes files and passes results to given sink, nothing is logged. Sink is not closed.
+     * @param input files divided by expected category
+     * @param sink receiver of results
+     * @param topCategories number of most likely categories in every result
+     */
+    public void categorize(List<List<File>> input, ResultSink sink, int topCategories) throws IOException {
+        if (topCategories < 1) {
+            throw new IllegalArgumentException("Number of top categories should be positive, was " + topCategories);
+        }
+        try {
+            new CategorizationPipeline(this).run(input, (file, expectedCategory, result, index) -> {
+                FileCategorization fileCategorization = result == null
+                        ? new FileCategorization(file, expectedCategory, null, null)
+                        : new FileCategorization(file, expectedCategory, result.getTopCategories(index, topCategories), result.getScores(index));
+                try {
+                    sink.accept(fileCategorization);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-                getLogger().log("____");
-            }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            getLogger().log("Categorization interrupted");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void categorizeAndLog(List<List<File>> input, boolean isTest) {
+        LoggingResultSink sink = new LoggingResultSink(isTest);
+        getLogger().log("==========");
+        try {
+            categorize(input, sink, 1);
+        } catch (IOException e) {
+            getLogger().log(e.getMessage());
         }
-        getLogger().log("+++++++++++++++++++++");
-        getLogger().log("Finished categorization");
-        getLogger().log("+++++++++++++++++++++");
-        getLogger().log("Failed to load: " + failed);
+        sink.logSummary();
     }
 
-    private Matrix categorizeFile(File input) {
-        Optional<BufferedImage> optionalBufferedImage = IO.getImage(input);
-        if (!optionalBufferedImage.isPresent()) {
-            return null;
+    /**
+     * Converts image to data accepted by this classifier (scaled to its image size).
+     */
+    @Override
+    public double[] preprocess(BufferedImage image) {
+        return ImageConverter.imageToData(image, imageSize, colors);
+    }
+
+    /**
+     * Categorizes batch of preprocessed images (see preprocess) at once: images are stacked into single matrix, so that
+     * every layer of network does one matrix multiplication for the whole batch.
+     */
+    @Override
+    public CategorizationResult categorizeBatch(List<double[]> data) {
+        Matrix in = new Matrix(data.size(), getInputSize(), neuralNetworkHelper.getPrecision());
+        for (int i = 0; i < data.size(); i++) {
+            in.setRow(i, data.get(i));
         }
-        BufferedImage image = optionalBufferedImage.get();
-        double[] data = ImageConverter.imageToData(image, imageSize, colors);
-        Matrix in = new Matrix(1, colors ? imageSize * imageSize * 3 : imageSize * imageSize);
-        in.setRow(0, data);
-        return neuralNetworkHelper.deduce(in);
+        return categorizeBatch(in);
+    }
+
+    /**
+     * Categorizes batch of inputs, one preprocessed image per row.
+     */
+    public CategorizationResult categorizeBatch(Matrix input) {
+        return new CategorizationResult(neuralNetworkHelper.deduce(input));
+    }
+
+    /**
+     * Creates immutable, inference only form of this classifier, with weights in precision of this classifier.
+     */
+    public CompiledClassifier compile() {
+        return compile(getPrecision());
+    }
+
+    /**
+     * Creates immutable, inference only form of this classifier, with weights in given precision.
+     */
+    public CompiledClassifier compile(Precision precision) {
+        return new CompiledClassifier(imageSize, colors, neuralNetworkHelper.compile(precision));
     }
 
     public void setWorkingInterface(NeuralNetwork.WorkingInterface workingInterface) {
@@ -208,6 +319,10 @@ public class Classifier {
         return colors;
     }
 
+    public Precision getPrecision() {
+        return neuralNetworkHelper.getPrecision();
+    }
+
     public LearningCaseHelper getLearningCaseHelper() {
         return learningCaseHelper;
     }
@@ -224,4 +339,36 @@ public class Classifier {
         neuralNetworkHelper.setManaged(val);
     }
 
+    public void setBatchSize(int val) {
+        neuralNetworkHelper.setBatchSize(val);
+    }
+
+    public void setDataParallelism(int val) {
+        neuralNetworkHelper.setDataParallelism(val);
+    }
+
+    public void setAsynchronousWorkers(int val) {
+        neuralNetworkHelper.setAsynchronousWorkers(val);
+    }
+
+    public void setStackedMultistart(boolean val) {
+        neuralNetworkHelper.setStackedMultistart(val);
+    }
+
+    public void setMultistartBudget(int val) {
+        neuralNetworkHelper.setMultistartBudget(val);
+    }
+
+    public void setOptimizer(Optimizer val) {
+        neuralNetworkHelper.setOptimizer(val);
+    }
+
+    public void setHiddenActivationFunction(ActivationFunction val) {
+        neuralNetworkHelper.setHiddenActivationFunction(val);
+    }
+
+    public void setOutputActivationFunction(ActivationFunction val) {
+        neuralNetworkHelper.setOutputActivationFunction(val);
+    }
+
 }
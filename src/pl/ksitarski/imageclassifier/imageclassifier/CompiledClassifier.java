@@ -0,0 +1,65 @@
+package pl.ksitarski.imageclassifier.imageclassifier;
+
+import pl.ksitarski.imageclassifier.neuralnetwork.InferenceNetwork;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Matrix;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Precision;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Immutable, inference only form of classifier, see Classifier.compile. Holds no training data nor training state,
+ * so it is much smaller than classifier, and can be shared by many threads without copying.
+ */
+public final class CompiledClassifier implements Categorizer {
+    private final int imageSize;
+    private final boolean colors;
+    private final InferenceNetwork network;
+
+    CompiledClassifier(int imageSize, boolean colors, InferenceNetwork network) {
+        this.imageSize = imageSize;
+        this.colors = colors;
+        this.network = network;
+    }
+
+    @Override
+    public double[] preprocess(BufferedImage image) {
+        return ImageConverter.imageToData(image, imageSize, colors);
+    }
+
+    @Override
+    public CategorizationResult categorizeBatch(List<double[]> data) {
+        Matrix in = new Matrix(data.size(), getInputSize(), getPrecision());
+        for (int i = 0; i < data.size(); i++) {
+            in.setRow(i, data.get(i));
+        }
+        return categorizeBatch(in);
+    }
+
+    /**
+     * Categorizes batch of inputs, one preprocessed image per row.
+     */
+    public CategorizationResult categorizeBatch(Matrix input) {
+        return new CategorizationResult(network.deduce(input));
+    }
+
+    public int getCategoriesCount() {
+        return network.getOutputCount();
+    }
+
+    public int getInputSize() {
+        return network.getInputCount();
+    }
+
+    public int getImageSize() {
+        return imageSize;
+    }
+
+    public boolean isColors() {
+        return colors;
+    }
+
+    public Precision getPrecision() {
+        return network.getPrecision();
+    }
+}
@@ -0,0 +1,101 @@
+package pl.ksitarski.imageclassifier.imageclassifier;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result sink that writes results as CSV, one line per file: file, expected category, most likely categories and
+ * scores of all categories. Columns of files that could not be loaded are empty. Header is written before the first
+ * line, but number of its columns depends on first loaded file, so files that could not be loaded before it are held
+ * back until then (or until sink is closed, if no file was loaded, with header of file and expected category only).
+ */
+public class CsvResultSink implements ResultSink {
+    private final Writer writer;
+    private final List<FileCategorization> pending = new ArrayList<>(); //not loaded files received before header
+    private boolean isHeaderWritten = false;
+
+    /**
+     * Constructor, given writer should be buffered.
+     */
+    public CsvResultSink(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Creates sink writing to given file (through buffered writer).
+     */
+    public CsvResultSink(File file) throws IOException {
+        this(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void accept(FileCategorization fileCategorization) throws IOException {
+        if (!isHeaderWritten) {
+            if (!fileCategorization.isLoaded()) {
+                pending.add(fileCategorization);
+                return;
+            }
+            writeHeader(fileCategorization.getTopCategories().length, fileCategorization.getScores().length);
+        }
+        writeLine(fileCategorization);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!isHeaderWritten) {
+            writeHeader(0, 0);
+        }
+        writer.close();
+    }
+
+    private void writeLine(FileCategorization fileCategorization) throws IOException {
+        writeFile(fileCategorization.getFile());
+        writer.write(',');
+        writer.write(Integer.toString(fileCategorization.getExpectedCategory()));
+        if (fileCategorization.isLoaded()) {
+            for (int category : fileCategorization.getTopCategories()) {
+                writer.write(',');
+                writer.write(Integer.toString(category));
+            }
+            for (double score : fileCategorization.getScores()) {
+                writer.write(',');
+                writer.write(Double.toString(score));
+            }
+        }
+        writer.write('\n');
+    }
+
+    private void writeHeader(int topCategories, int categories) throws IOException {
+        writer.write("file,expected");
+        for (int i = 1; i <= topCategories; i++) {
+            writer.write(",top" + i);
+        }
+        for (int i = 0; i < categories; i++) {
+            writer.write(",score" + i);
+        }
+        writer.write('\n');
+        isHeaderWritten = true;
+        for (FileCategorization fileCategorization : pending) {
+            writeLine(fileCategorization);
+        }
+        pending.clear();
+    }
+
+    //file path, quoted if needed
+    private void writeFile(File file) throws IOException {
+        String path = file.getPath();
+        if (path.indexOf(',') < 0 && path.indexOf('"') < 0 && path.indexOf('\n') < 0) {
+            writer.write(path);
+            return;
+        }
+        writer.write('"');
+        writer.write(path.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
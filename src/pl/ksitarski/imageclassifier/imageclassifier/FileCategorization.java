@@ -0,0 +1,70 @@
+package pl.ksitarski.imageclassifier.imageclassifier;
+
+import java.io.File;
+
+/**
+ * Result of categorization of single file: its most likely categories (best first) and scores of all categories.
+ */
+public class FileCategorization {
+    private final File file;
+    private final int expectedCategory;
+    private final int[] topCategories; //null if file could not be loaded
+    private final double[] scores; //null if file could not be loaded
+
+    /**
+     * Constructor.
+     * @param file categorized file
+     * @param expectedCategory category that file was listed under
+     * @param topCategories most likely categories, best first, or null if file could not be loaded
+     * @param scores scores of all categories, or null if file could not be loaded
+     */
+    public FileCategorization(File file, int expectedCategory, int[] topCategories, double[] scores) {
+        this.file = file;
+        this.expectedCategory = expectedCategory;
+        this.topCategories = topCategories;
+        this.scores = scores;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getExpectedCategory() {
+        return expectedCategory;
+    }
+
+    /**
+     * Whether file was loaded (and categorized).
+     */
+    public boolean isLoaded() {
+        return scores != null;
+    }
+
+    /**
+     * Returns most likely category.
+     */
+    public int getCategory() {
+        return topCategories[0];
+    }
+
+    /**
+     * Returns score of most likely category.
+     */
+    public double getScore() {
+        return scores[topCategories[0]];
+    }
+
+    /**
+     * Returns most likely categories, best first.
+     */
+    public int[] getTopCategories() {
+        return topCategories;
+    }
+
+    /**
+     * Returns scores of all categories.
+     */
+    public double[] getScores() {
+        return scores;
+    }
+}
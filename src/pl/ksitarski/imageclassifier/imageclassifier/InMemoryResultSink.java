@@ -0,0 +1,23 @@
+package pl.ksitarski.imageclassifier.imageclassifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result sink that keeps all results in memory.
+ */
+public class InMemoryResultSink implements ResultSink {
+    private final List<FileCategorization> results = new ArrayList<>();
+
+    @Override
+    public void accept(FileCategorization fileCategorization) {
+        results.add(fileCategorization);
+    }
+
+    /**
+     * Returns results in order in which they were received.
+     */
+    public List<FileCategorization> getResults() {
+        return results;
+    }
+}
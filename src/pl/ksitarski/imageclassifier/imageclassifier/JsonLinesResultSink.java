@@ -0,0 +1,53 @@
+package pl.ksitarski.imageclassifier.imageclassifier;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Result sink that writes results as JSON lines, one object per file with fields file, expectedCategory, loaded,
+ * topCategories and scores.
+ */
+public class JsonLinesResultSink implements ResultSink {
+    private final Writer writer;
+    private final Gson gson = new Gson();
+
+    /**
+     * Constructor, given writer should be buffered.
+     */
+    public JsonLinesResultSink(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Creates sink writing to given file (through buffered writer).
+     */
+    public JsonLinesResultSink(File file) throws IOException {
+        this(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void accept(FileCategorization fileCategorization) throws IOException {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("file", fileCategorization.getFile().getPath());
+        line.put("expectedCategory", fileCategorization.getExpectedCategory());
+        line.put("loaded", fileCategorization.isLoaded());
+        if (fileCategorization.isLoaded()) {
+            line.put("topCategories", fileCategorization.getTopCategories());
+            line.put("scores", fileCategorization.getScores());
+        }
+        gson.toJson(line, writer);
+        writer.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
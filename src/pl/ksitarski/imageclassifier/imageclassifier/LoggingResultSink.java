@@ -0,0 +1,66 @@
+package pl.ksitarski.imageclassifier.imageclassifier;
+
+import static pl.ksitarski.imageclassifier.neuralnetwork.LoggerSettings.*;
+
+/**
+ * Result sink that writes every result to logger and counts them. Every result is formatted, so on large runs
+ * writing to CSV or JSON lines sink is much cheaper.
+ */
+public class LoggingResultSink implements ResultSink {
+    private final boolean isTest;
+    private int guesses = 0;
+    private int misses = 0;
+    private int failed = 0;
+
+    /**
+     * Constructor.
+     * @param isTest whether categories that files were listed under are known, so that results are checked against them
+     */
+    public LoggingResultSink(boolean isTest) {
+        this.isTest = isTest;
+    }
+
+    @Override
+    public void accept(FileCategorization fileCategorization) {
+        String name = fileCategorization.getFile().getName();
+        getLogger().log("Categorizing file " + name + (isTest ? " of category " + fileCategorization.getExpectedCategory() : ""));
+        if (!fileCategorization.isLoaded()) {
+            getLogger().log("Failed to load file:" + name);
+            failed++;
+        } else {
+            StringBuilder sb = new StringBuilder();
+            for (double score : fileCategorization.getScores()) {
+                if (sb.length() > 0) {
+                    sb.append(",  ");
+                }
+                sb.append(String.format("%.3f", score));
+            }
+            getLogger().log(sb.toString());
+            if (!isTest) {
+                getLogger().log("Most likely category " + fileCategorization.getCategory() + " with value " + fileCategorization.getScore());
+            } else if (fileCategorization.getCategory() != fileCategorization.getExpectedCategory()) {
+                misses++;
+                getLogger().log("Mismatched file");
+            } else {
+                guesses++;
+                getLogger().log("Matched file");
+            }
+        }
+        getLogger().log("____");
+    }
+
+    /**
+     * Writes summary of all received results to logger.
+     */
+    public void logSummary() {
+        getLogger().log("+++++++++++++++++++++");
+        getLogger().log(isTest ? "Finished categorization test" : "Finished categorization");
+        getLogger().log("+++++++++++++++++++++");
+        if (isTest) {
+            getLogger().log("Checked files: " + (guesses + misses));
+            getLogger().log("Correctly guessed: " + guesses);
+            getLogger().log("Incorrectly guessed: " + misses);
+        }
+        getLogger().log("Failed to load: " + failed);
+    }
+}
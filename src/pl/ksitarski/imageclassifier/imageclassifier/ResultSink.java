@@ -0,0 +1,19 @@
+package pl.ksitarski.imageclassifier.imageclassifier;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receiver of results of categorization of files, see Classifier.categorize. Results are passed from single thread.
+ */
+public interface ResultSink extends Closeable {
+    /**
+     * Receives result of single file.
+     */
+    void accept(FileCategorization fileCategorization) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+
+    }
+}
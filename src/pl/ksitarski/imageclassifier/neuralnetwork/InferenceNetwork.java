@@ -0,0 +1,59 @@
+package pl.ksitarski.imageclassifier.neuralnetwork;
+
+import pl.ksitarski.imageclassifier.neuralnetwork.math.ActivationFunction;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Matrix;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.MatrixMath;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.NLMath;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Precision;
+
+import java.util.List;
+
+/**
+ * Immutable, inference only form of neural network, see NeuralNetwork.compile. Keeps only weights and activation
+ * functions, no training state. Weights are stored neuron-major (one row per neuron), so that every output is a dot
+ * product of two continuous rows. Deduction does not modify the network, so single instance can be shared by many
+ * threads.
+ */
+public final class InferenceNetwork {
+    private final int inputCount;
+    private final Matrix[] weights; //one row per neuron, one column per input
+    private final ActivationFunction[] activationFunctions;
+
+    InferenceNetwork(List<NeuralLayer> neuralLayers, Precision precision) {
+        inputCount = neuralLayers.get(0).getWeights().getHeight();
+        weights = new Matrix[neuralLayers.size()];
+        activationFunctions = new ActivationFunction[neuralLayers.size()];
+        for (int i = 0; i < neuralLayers.size(); i++) {
+            NeuralLayer neuralLayer = neuralLayers.get(i);
+            weights[i] = MatrixMath.transpose(neuralLayer.getWeights()).toPrecision(precision);
+            activationFunctions[i] = neuralLayer.getActivationFunction();
+        }
+    }
+
+    /**
+     * Deduces output from given input, one row per input.
+     */
+    public Matrix deduce(Matrix input) {
+        if (input.getWidth() != inputCount) {
+            throw new IllegalArgumentException("Input width " + input.getWidth() + " differs from input count " + inputCount);
+        }
+        Matrix it = input.toPrecision(getPrecision());
+        for (int i = 0; i < weights.length; i++) {
+            Matrix result = MatrixMath.multiplyTransposeB(it, weights[i]);
+            it = NLMath.applyFunctionInto(result, result, activationFunctions[i]);
+        }
+        return it;
+    }
+
+    public int getInputCount() {
+        return inputCount;
+    }
+
+    public int getOutputCount() {
+        return weights[weights.length - 1].getHeight();
+    }
+
+    public Precision getPrecision() {
+        return weights[0].getPrecision();
+    }
+}
@@ -0,0 +1,107 @@
+package pl.ksitarski.imageclassifier.neuralnetwork;
+
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Matrix;
+
+import java.util.SplittableRandom;
+
+/**
+ * Splits learning cases into mini-batches, in order given by permutation of row indices that is shuffled every epoch.
+ * Rows of a batch are gathered into preallocated buffers - learning cases are never reordered in place, as the same
+ * inputs might be shared by many networks (for example during multistart).
+ */
+class MiniBatchSampler {
+    private final Matrix inputs;
+    private final Matrix outputs;
+    private final int batchSize;
+    private final int[] permutation;
+
+    //one buffer for every worker that loads batches in parallel
+    private final BatchBuffer[] buffers;
+
+    /**
+     * Default constructor.
+     * @param inputs all inputs
+     * @param outputs all outputs
+     * @param batchSize number of learning cases in a batch
+     * @param workerCount number of workers that load batches in parallel
+     */
+    MiniBatchSampler(Matrix inputs, Matrix outputs, int batchSize, int workerCount) {
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.batchSize = batchSize;
+        permutation = new int[inputs.getHeight()];
+        for (int i = 0; i < permutation.length; i++) {
+            permutation[i] = i;
+        }
+        int lastBatchSize = inputs.getHeight() - (getBatchCount() - 1) * batchSize;
+        buffers = new BatchBuffer[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            buffers[i] = new BatchBuffer(lastBatchSize);
+        }
+    }
+
+    /**
+     * Whether this sampler was created for given data, batch size and number of workers.
+     */
+    boolean fits(Matrix inputs, Matrix outputs, int batchSize, int workerCount) {
+        return this.inputs == inputs && this.outputs == outputs && this.batchSize == batchSize && buffers.length == workerCount;
+    }
+
+    /**
+     * Shuffles order of learning cases for next epoch (Fisher-Yates).
+     */
+    void shuffle(SplittableRandom random) {
+        for (int i = permutation.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = tmp;
+        }
+    }
+
+    int getBatchCount() {
+        return (inputs.getHeight() + batchSize - 1) / batchSize;
+    }
+
+    /**
+     * Gathers learning cases of given batch into buffers of given worker, returned by getInput and getOutput.
+     */
+    void load(int batch, int worker) {
+        BatchBuffer buffer = buffers[worker];
+        int from = batch * batchSize;
+        int to = Math.min(from + batchSize, permutation.length);
+        for (int i = from; i < to; i++) {
+            buffer.input.copyRowFrom(i - from, inputs, permutation[i]);
+            buffer.output.copyRowFrom(i - from, outputs, permutation[i]);
+        }
+    }
+
+    /**
+     * Returns inputs of given batch, that was loaded before by given worker.
+     */
+    Matrix getInput(int batch, int worker) {
+        return batch + 1 == getBatchCount() ? buffers[worker].lastInputView : buffers[worker].input;
+    }
+
+    /**
+     * Returns outputs of given batch, that was loaded before by given worker.
+     */
+    Matrix getOutput(int batch, int worker) {
+        return batch + 1 == getBatchCount() ? buffers[worker].lastOutputView : buffers[worker].output;
+    }
+
+    private class BatchBuffer {
+        private final Matrix input;
+        private final Matrix output;
+        //views used by the last batch, if it is smaller than others
+        private final Matrix lastInputView;
+        private final Matrix lastOutputView;
+
+        BatchBuffer(int lastBatchSize) {
+            input = new Matrix(batchSize, inputs.getWidth(), inputs.getPrecision());
+            output = new Matrix(batchSize, outputs.getWidth(), outputs.getPrecision());
+            lastInputView = input.getRowsView(0, lastBatchSize);
+            lastOutputView = output.getRowsView(0, lastBatchSize);
+        }
+    }
+}
@@ -1,6 +1,12 @@
 package pl.ksitarski.imageclassifier.neuralnetwork;
 
+import pl.ksitarski.imageclassifier.neuralnetwork.math.ActivationFunction;
 import pl.ksitarski.imageclassifier.neuralnetwork.math.Matrix;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Optimizer;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.OptimizerState;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Precision;
+
+import java.util.SplittableRandom;
 
 /**
  * Thin abstraction wrapper over matrix, represents neuron network layer.
@@ -10,6 +16,9 @@ public class NeuralLayer {
     private final int neuronCount;
 
     private final Matrix weights;
+    private ActivationFunction activationFunction = ActivationFunction.SIGMOID;
+    private Optimizer optimizer = Optimizer.GRADIENT_DESCENT;
+    private OptimizerState optimizerState = new OptimizerState();
 
     /**
      * Default constructor.
@@ -17,9 +26,20 @@ public class NeuralLayer {
      * @param neuronCount number of neurons
      */
     public NeuralLayer(int inputCount, int neuronCount) {
+        this(inputCount, neuronCount, Precision.DOUBLE, new SplittableRandom());
+    }
+
+    /**
+     * Constructor.
+     * @param inputCount number of inputs per neuron
+     * @param neuronCount number of neurons
+     * @param precision precision of weights
+     * @param random random generator used to initialize weights
+     */
+    public NeuralLayer(int inputCount, int neuronCount, Precision precision, SplittableRandom random) {
         this.inputCount = inputCount;
         this.neuronCount = neuronCount;
-        weights = new Matrix(inputCount, neuronCount).setRandom();
+        weights = new Matrix(inputCount, neuronCount, precision).setRandom(random);
     }
 
     /**
@@ -30,12 +50,76 @@ public class NeuralLayer {
         this.inputCount = other.inputCount;
         this.neuronCount = other.neuronCount;
         this.weights = new Matrix(other.weights);
+        this.activationFunction = other.activationFunction;
+        this.optimizer = other.optimizer;
+        this.optimizerState = new OptimizerState(other.getOptimizerState());
+    }
+
+    /**
+     * Copies weights, activation function and optimizer (with its state) of other layer of the same size into this
+     * layer, reusing buffers of this layer.
+     * @param other neural layer to copy from
+     */
+    public NeuralLayer copyFrom(NeuralLayer other) {
+        weights.copyFrom(other.weights);
+        this.activationFunction = other.activationFunction;
+        this.optimizer = other.optimizer;
+        getOptimizerState().copyFrom(other.getOptimizerState());
+        return this;
+    }
+
+    /**
+     * Whether other layer can be copied into this layer by copyFrom.
+     */
+    public boolean isCopyableFrom(NeuralLayer other) {
+        return inputCount == other.inputCount && neuronCount == other.neuronCount
+                && weights.getPrecision() == other.weights.getPrecision();
     }
 
     public void adjustWeights(Matrix adjustment) {
         weights.add(adjustment);
     }
 
+    /**
+     * Updates weights with adjustment scaled by learning rate, using optimizer of this layer.
+     */
+    public void adjustWeights(Matrix adjustment, double learningRate) {
+        getOptimizer().update(weights, adjustment, getOptimizerState(), learningRate);
+    }
+
+    /**
+     * Returns optimizer of this layer. Layers loaded from files that predate optimizers use gradient descent.
+     */
+    public Optimizer getOptimizer() {
+        return optimizer == null ? Optimizer.GRADIENT_DESCENT : optimizer;
+    }
+
+    /**
+     * Sets optimizer of this layer, its state is reset.
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+        this.optimizerState = new OptimizerState();
+    }
+
+    public OptimizerState getOptimizerState() {
+        if (optimizerState == null) {
+            optimizerState = new OptimizerState();
+        }
+        return optimizerState;
+    }
+
+    /**
+     * Returns activation function of this layer. Layers loaded from files that predate activation functions use sigmoid.
+     */
+    public ActivationFunction getActivationFunction() {
+        return activationFunction == null ? ActivationFunction.SIGMOID : activationFunction;
+    }
+
+    public void setActivationFunction(ActivationFunction activationFunction) {
+        this.activationFunction = activationFunction;
+    }
+
     public Matrix getWeights() {
         return weights;
     }
@@ -53,6 +137,8 @@ public class NeuralLayer {
         return "NeuronLayer{" +
                 "inputCount=" + inputCount +
                 ", neuronCount=" + neuronCount +
+                ", activationFunction=" + activationFunction +
+                ", optimizer=" + optimizer +
                 ", weights=" + weights +
                 '}';
     }
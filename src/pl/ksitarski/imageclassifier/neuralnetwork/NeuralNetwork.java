@@ -1,13 +1,18 @@
 package pl.ksitarski.imageclassifier.neuralnetwork;
 
+import pl.ksitarski.imageclassifier.neuralnetwork.math.ActivationFunction;
 import pl.ksitarski.imageclassifier.neuralnetwork.math.Matrix;
 import pl.ksitarski.imageclassifier.neuralnetwork.math.MatrixMath;
 import pl.ksitarski.imageclassifier.neuralnetwork.math.NLMath;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Optimizer;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Precision;
 import pl.ksitarski.imageclassifier.othertools.IO;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static pl.ksitarski.imageclassifier.neuralnetwork.LoggerSettings.*;
 
@@ -25,9 +30,21 @@ public class NeuralNetwork {
     private double maxDeviation;
     private List<Double> resultsHistory = new ArrayList<>();
     private List<NeuralLayer> backupNeuralLayers = new ArrayList<>();
+    private int batchSize = 0; //number of learning cases per weight update, 0 means all of them
+    private int dataParallelism = 0; //number of shards trained in parallel, 0 or 1 means single thread
+    private int asynchronousWorkers = 0; //number of workers updating weights without locks, 0 or 1 means synchronous
 
     private transient WorkingInterface workingInterface;
+    private transient TrainingWorkspace trainingWorkspace;
+    private transient SplittableRandom random;
+    private transient MiniBatchSampler miniBatchSampler;
+    private transient ShardedWorkspace shardedWorkspace;
+    private transient TrainingWorkspace[] asynchronousWorkspaces;
+    private transient boolean isBackupStale; //backup holds weights that were replaced by restoreBackup
     private int totalIterations = 0;
+    private double currentLearningRate; //learning rate of last iteration, used when resuming from checkpoint
+    private transient boolean isResumed;
+    private transient CheckpointListener checkpointListener;
 
     /**
      * Default constructor.
@@ -41,15 +58,33 @@ public class NeuralNetwork {
      * @param maxDeviation maximum deviation for purposes of deviation calculation
      */
     public NeuralNetwork(int inputs, int outputs, int[] neuronsInLayer, int layerCount, double initialLearningRate, boolean isManaged, double adjustLearningRate, double maxDeviation) {
+        this(inputs, outputs, neuronsInLayer, layerCount, initialLearningRate, isManaged, adjustLearningRate, maxDeviation, Precision.DOUBLE, new SplittableRandom());
+    }
+
+    /**
+     * Constructor.
+     * @param inputs number of inputs
+     * @param outputs number of outputs
+     * @param neuronsInLayer number of neurons per layer
+     * @param layerCount number of layers
+     * @param initialLearningRate initial learning rate for the network
+     * @param isManaged whether network manages learning rate using its algorithm
+     * @param adjustLearningRate adjustment to learning rate upon failing
+     * @param maxDeviation maximum deviation for purposes of deviation calculation
+     * @param precision precision of weights and computations
+     * @param random random generator owned by this network, used for weight initialization
+     */
+    public NeuralNetwork(int inputs, int outputs, int[] neuronsInLayer, int layerCount, double initialLearningRate, boolean isManaged, double adjustLearningRate, double maxDeviation, Precision precision, SplittableRandom random) {
+        this.random = random;
         layerCount = layerCount + 1;
         for (int i = 0; i < layerCount; i++) {
             NeuralLayer neuralLayer;
             if (i == 0) {
-                neuralLayer = new NeuralLayer(inputs, neuronsInLayer[0]);
+                neuralLayer = new NeuralLayer(inputs, neuronsInLayer[0], precision, random);
             } else if (i + 1 == layerCount) {
-                neuralLayer = new NeuralLayer(neuronsInLayer[neuronsInLayer.length - 1], outputs);
+                neuralLayer = new NeuralLayer(neuronsInLayer[neuronsInLayer.length - 1], outputs, precision, random);
             } else {
-                neuralLayer = new NeuralLayer(neuronsInLayer[i - 1], neuronsInLayer[i]);
+                neuralLayer = new NeuralLayer(neuronsInLayer[i - 1], neuronsInLayer[i], precision, random);
             }
             neuralLayers.add(neuralLayer);
         }
@@ -59,11 +94,31 @@ public class NeuralNetwork {
         this.maxDeviation = maxDeviation;
     }
 
+    /**
+     * Snapshot copy constructor. Copies layers (with optimizer state), settings and history, but not backup layers.
+     * @param other network to copy
+     */
+    public NeuralNetwork(NeuralNetwork other) {
+        for (NeuralLayer neuralLayer : other.neuralLayers) {
+            neuralLayers.add(new NeuralLayer(neuralLayer));
+        }
+        this.initialLearningRate = other.initialLearningRate;
+        this.adjustLearningRate = other.adjustLearningRate;
+        this.isManaged = other.isManaged;
+        this.maxDeviation = other.maxDeviation;
+        this.resultsHistory = new ArrayList<>(other.resultsHistory);
+        this.batchSize = other.batchSize;
+        this.dataParallelism = other.dataParallelism;
+        this.asynchronousWorkers = other.asynchronousWorkers;
+        this.totalIterations = other.totalIterations;
+        this.currentLearningRate = other.currentLearningRate;
+    }
+
     /**
      * Deduces output from given input.
      */
     public Matrix deduce(Matrix input) {
-        Matrix it = input;
+        Matrix it = input.toPrecision(getPrecision());
 
         for (NeuralLayer neuralLayer : neuralLayers) {
             it = propagate(it, neuralLayer);
@@ -71,25 +126,84 @@ public class NeuralNetwork {
         return it;
     }
 
+    /**
+     * Creates immutable, inference only copy of this network with weights in given precision.
+     */
+    public InferenceNetwork compile(Precision precision) {
+        return new InferenceNetwork(neuralLayers, precision);
+    }
 
+
+    /**
+     * Copies current layers into backup layers. Backup layers are allocated only once (or if structure of network
+     * changed), later backups only copy values.
+     */
     private void generateBackup() {
         if (!isManaged) return;
-        backupNeuralLayers = new ArrayList<>();
-        for (NeuralLayer neuralLayer : neuralLayers) {
-            backupNeuralLayers.add(new NeuralLayer(neuralLayer));
+        if (!canCopyIntoBackup()) {
+            backupNeuralLayers = new ArrayList<>();
+            for (NeuralLayer neuralLayer : neuralLayers) {
+                backupNeuralLayers.add(new NeuralLayer(neuralLayer));
+            }
+        } else {
+            for (int i = 0; i < neuralLayers.size(); i++) {
+                backupNeuralLayers.get(i).copyFrom(neuralLayers.get(i));
+            }
         }
+        isBackupStale = false;
     }
 
+    /**
+     * Restores backup by swapping current and backup layers, old current layers become buffer for the next backup.
+     */
     private void restoreBackup() {
         if (!isManaged) return;
+        if (isBackupStale || backupNeuralLayers == null || backupNeuralLayers.size() != neuralLayers.size()) {
+            return; //there is no backup newer than current layers
+        }
         getLogger().log("Restoring old neuronnet");
+        List<NeuralLayer> tmp = neuralLayers;
         neuralLayers = backupNeuralLayers;
+        backupNeuralLayers = tmp;
+        isBackupStale = true;
+    }
+
+    private boolean canCopyIntoBackup() {
+        if (backupNeuralLayers == null || backupNeuralLayers.size() != neuralLayers.size()) {
+            return false;
+        }
+        for (int i = 0; i < neuralLayers.size(); i++) {
+            if (!backupNeuralLayers.get(i).isCopyableFrom(neuralLayers.get(i))) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public void setWorkingInterface(WorkingInterface workingInterface) {
         this.workingInterface = workingInterface;
     }
 
+    public void setCheckpointListener(CheckpointListener checkpointListener) {
+        this.checkpointListener = checkpointListener;
+    }
+
+    /**
+     * Marks this network (usually loaded from checkpoint) so that next training starts with learning rate of last
+     * iteration before the checkpoint, instead of initial learning rate.
+     */
+    public void setResumed() {
+        isResumed = true;
+    }
+
+    public int getTotalIterations() {
+        return totalIterations;
+    }
+
+    public double getCurrentLearningRate() {
+        return currentLearningRate;
+    }
+
     public int getCategoriesCount() {
         return neuralLayers.get(neuralLayers.size() - 1).getWeights().getWidth();
     }
@@ -98,6 +212,20 @@ public class NeuralNetwork {
         return neuralLayers.get(0).getWeights().getHeight();
     }
 
+    /**
+     * Returns random generator of this network. Networks loaded from file get new, unseeded generator.
+     */
+    SplittableRandom getRandom() {
+        if (random == null) {
+            random = new SplittableRandom();
+        }
+        return random;
+    }
+
+    public Precision getPrecision() {
+        return neuralLayers.get(0).getWeights().getPrecision();
+    }
+
     /**
      * Simplified training mode for multistart.
      * @param inputs inputs for neural network
@@ -106,11 +234,30 @@ public class NeuralNetwork {
      * @return deviation of this multistart instance.
      */
     public double trainMultistart(Matrix inputs, Matrix outputs, int thisId) {
+        return trainMultistart(inputs, outputs, thisId, 10);
+    }
+
+    /**
+     * Simplified training mode for multistart. Might be called many times, continuing training of this network. Stops
+     * before given number of iterations if working interface asks to stop.
+     * @param inputs inputs for neural network
+     * @param outputs outputs for neural network
+     * @param thisId id of this multistart instance.
+     * @param iterations number of iterations (epochs)
+     * @return deviation of this multistart instance.
+     */
+    public double trainMultistart(Matrix inputs, Matrix outputs, int thisId, int iterations) {
+        inputs = inputs.toPrecision(getPrecision());
+        outputs = outputs.toPrecision(getPrecision());
         double customLearningRate = initialLearningRate;
-        for (int i = 0; i < 10; i++) {
-            iterate(inputs, outputs, customLearningRate);
+        for (int i = 0; i < iterations; i++) {
+            if (workingInterface != null && !workingInterface.isContinueLearning()) {
+                getLogger().log(thisId + ": ending multistart because of stop request");
+                break;
+            }
+            epoch(inputs, outputs, customLearningRate, Integer.MAX_VALUE, false);
             if (i % 2 == 0) {
-                getLogger().log(thisId + ": " + i + "/" + 10);
+                getLogger().log(thisId + ": " + i + "/" + iterations);
             }
         }
         double deviation = getDeviation(inputs, outputs, maxDeviation);
@@ -119,29 +266,35 @@ public class NeuralNetwork {
     }
 
     /**
-     * Trains this neural network
+     * Trains this neural network. Every iteration is one epoch - a single weight update in full batch mode, or one
+     * update per mini-batch if batch size is set.
      * @param inputs inputs for neural network
      * @param outputs output for neural network
      * @param learningStopConditionTarget end condition
      */
     public void train(Matrix inputs, Matrix outputs, LearningStopConditionTarget learningStopConditionTarget) {
+        inputs = inputs.toPrecision(getPrecision());
+        outputs = outputs.toPrecision(getPrecision());
         double lastDeviation = 10;
-        double customLearningRate = initialLearningRate;
+        double customLearningRate = isResumed && currentLearningRate > 0 ? currentLearningRate : initialLearningRate;
+        isResumed = false;
         int i = 0;
+        int updates = 0;
         int falling = 0;
-        while (learningStopConditionTarget.canIterate(lastDeviation, i)) {
+        while (learningStopConditionTarget.canIterate(lastDeviation, i, updates)) {
             if (workingInterface != null && !workingInterface.isContinueLearning()) {
                 getLogger().log("Ending work because of stop request");
                 printHistory();
                 return;
             }
 
-            iterate(inputs, outputs, customLearningRate);
+            //whether training workspace holds forward pass of all inputs through current weights
+            boolean isForwardPassDone = false;
 
-            if (i % 10 == 0) { //logging and adjustments happen only every 10 iterations
+            if (i % 10 == 0) { //logging and adjustments happen only every 10 iterations, before iteration's update
                 getLogger().clear();
                 getLogger().log("Learning rate: " + (customLearningRate * 100000) + ", is managed: " + isManaged);
-                getLogger().log("Iteration: " + i + " (global iterations: " + totalIterations + ")");
+                getLogger().log("Iteration: " + i + " (global iterations: " + totalIterations + ", updates: " + updates + ")");
                 learningStopConditionTarget.writeInfo();
                 double deviation = getDeviation(inputs, outputs, maxDeviation);
 
@@ -192,66 +345,252 @@ public class NeuralNetwork {
                 } else {
                     resultsHistory.add(deviation);
                 }
+                isForwardPassDone = !usesOldValue; //restored weights need new forward pass
             }
+
+            updates += epoch(inputs, outputs, customLearningRate, learningStopConditionTarget.getUpdateLimit(updates), isForwardPassDone);
             getLogger().logI("iteration: " + i);
             i++;
             totalIterations++;
+            currentLearningRate = customLearningRate;
+            if (checkpointListener != null) {
+                checkpointListener.onIteration(totalIterations);
+            }
+            double progress = learningStopConditionTarget.getProgress(i, updates);
+            if (workingInterface != null && progress >= 0) {
+                workingInterface.reportProgress(progress);
+            }
         }
         printHistory();
 
     }
 
     private Matrix propagate(Matrix input, NeuralLayer neuralLayer) {
-        return NLMath.applyFunction(MatrixMath.multiply(input, neuralLayer.getWeights()));
+        return NLMath.multiplyAndApplyFunction(input, neuralLayer.getWeights(), neuralLayer.getActivationFunction());
+    }
+
+    private Matrix propagateInto(Matrix result, Matrix input, NeuralLayer neuralLayer) {
+        return NLMath.multiplyAndApplyFunctionInto(result, input, neuralLayer.getWeights(), neuralLayer.getActivationFunction());
+    }
+
+    private TrainingWorkspace getTrainingWorkspace(int batchSize) {
+        if (trainingWorkspace == null || !trainingWorkspace.fits(neuralLayers, batchSize)) {
+            trainingWorkspace = new TrainingWorkspace(neuralLayers, batchSize);
+        }
+        trainingWorkspace.setBatchSize(batchSize);
+        return trainingWorkspace;
     }
 
-    private void iterate(Matrix inputs, Matrix outputs, double customLearningRate) {
-        List<Matrix> layerResults = new ArrayList<>();
+    private ShardedWorkspace getShardedWorkspace(int batchSize) {
+        if (shardedWorkspace == null || !shardedWorkspace.fits(neuralLayers, batchSize, dataParallelism)) {
+            shardedWorkspace = new ShardedWorkspace(neuralLayers, batchSize, dataParallelism);
+        }
+        shardedWorkspace.setBatchSize(batchSize);
+        return shardedWorkspace;
+    }
+
+    /**
+     * Performs one epoch: single iteration over all learning cases, or iterations over mini-batches of shuffled
+     * learning cases. Mini-batch epoch ends early on stop request or after given number of updates. With asynchronous
+     * workers, mini-batches are trained in parallel.
+     * @param isForwardPassDone whether training workspace (or sharded workspace in data-parallel mode) already holds
+     *                          forward pass of all inputs (only used in full batch mode)
+     * @return number of performed weight updates
+     */
+    private int epoch(Matrix inputs, Matrix outputs, double customLearningRate, int maxUpdates, boolean isForwardPassDone) {
+        if (isFullBatch(inputs)) {
+            iterate(inputs, outputs, customLearningRate, isForwardPassDone);
+            return 1;
+        }
+        int workerCount = Math.max(asynchronousWorkers, 1);
+        if (miniBatchSampler == null || !miniBatchSampler.fits(inputs, outputs, batchSize, workerCount)) {
+            miniBatchSampler = new MiniBatchSampler(inputs, outputs, batchSize, workerCount);
+        }
+        miniBatchSampler.shuffle(getRandom());
+        if (workerCount > 1) {
+            return asynchronousEpoch(miniBatchSampler, customLearningRate, maxUpdates);
+        }
+        int updates = 0;
+        for (int batch = 0; batch < miniBatchSampler.getBatchCount() && updates < maxUpdates; batch++) {
+            if (workingInterface != null && !workingInterface.isContinueLearning()) {
+                break;
+            }
+            miniBatchSampler.load(batch, 0);
+            iterate(miniBatchSampler.getInput(batch, 0), miniBatchSampler.getOutput(batch, 0), customLearningRate, false);
+            updates++;
+        }
+        return updates;
+    }
+
+    /**
+     * Hogwild-style epoch: workers take next mini-batches and apply their updates directly to shared weights, without
+     * any locking. Updates of different workers might overlap, so training is not deterministic.
+     * @return number of performed weight updates
+     */
+    private int asynchronousEpoch(MiniBatchSampler sampler, double customLearningRate, int maxUpdates) {
+        TrainingWorkspace[] workspaces = getAsynchronousWorkspaces();
+        AtomicInteger nextBatch = new AtomicInteger();
+        AtomicInteger updates = new AtomicInteger();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < workspaces.length; i++) {
+            final int worker = i;
+            tasks.add(TrainingPool.get().submit(() -> {
+                while (workingInterface == null || workingInterface.isContinueLearning()) {
+                    int batch = nextBatch.getAndIncrement();
+                    if (batch >= sampler.getBatchCount() || updates.getAndIncrement() >= maxUpdates) {
+                        return;
+                    }
+                    sampler.load(batch, worker);
+                    Matrix inputs = sampler.getInput(batch, worker);
+                    TrainingWorkspace workspace = workspaces[worker];
+                    workspace.setBatchSize(inputs.getHeight());
+                    forward(workspace, inputs);
+                    computeGradients(workspace, inputs, sampler.getOutput(batch, worker));
+                    applyGradients(workspace, customLearningRate);
+                }
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        return Math.min(updates.get(), maxUpdates);
+    }
+
+    private TrainingWorkspace[] getAsynchronousWorkspaces() {
+        if (asynchronousWorkspaces == null || asynchronousWorkspaces.length != asynchronousWorkers
+                || !asynchronousWorkspaces[0].fits(neuralLayers, batchSize)) {
+            asynchronousWorkspaces = new TrainingWorkspace[asynchronousWorkers];
+            for (int i = 0; i < asynchronousWorkers; i++) {
+                asynchronousWorkspaces[i] = new TrainingWorkspace(neuralLayers, batchSize);
+            }
+        }
+        return asynchronousWorkspaces;
+    }
+
+    boolean isFullBatch(Matrix inputs) {
+        return batchSize <= 0 || batchSize >= inputs.getHeight();
+    }
+
+    private boolean isDataParallel(Matrix inputs) {
+        return dataParallelism > 1 && inputs.getHeight() >= dataParallelism;
+    }
+
+    /**
+     * Single weight update based on all given learning cases. In data-parallel mode gradients of every shard are
+     * calculated in parallel and summed before the update.
+     */
+    private void iterate(Matrix inputs, Matrix outputs, double customLearningRate, boolean isForwardPassDone) {
+        if (isDataParallel(inputs)) {
+            ShardedWorkspace workspace = getShardedWorkspace(inputs.getHeight());
+            workspace.invoke((shard, shardWorkspace, from, to) -> {
+                Matrix shardInputs = inputs.getRowsView(from, to);
+                if (!isForwardPassDone) {
+                    forward(shardWorkspace, shardInputs);
+                }
+                computeGradients(shardWorkspace, shardInputs, outputs.getRowsView(from, to));
+            }, true);
+            applyGradients(workspace.getWorkspace(0), customLearningRate);
+            return;
+        }
+        TrainingWorkspace workspace = getTrainingWorkspace(inputs.getHeight());
+        if (!isForwardPassDone) {
+            forward(workspace, inputs);
+        }
+        computeGradients(workspace, inputs, outputs);
+        applyGradients(workspace, customLearningRate);
+    }
 
-        //forward propagation calculation
+    /**
+     * Forward propagation calculation, activations are kept in training workspace for the update.
+     * @return output of last layer
+     */
+    private Matrix forward(TrainingWorkspace workspace, Matrix inputs) {
         Matrix lastOutputLayer = inputs;
-        for (NeuralLayer layer : neuralLayers) {
-            lastOutputLayer = propagate(lastOutputLayer, layer);
-            layerResults.add(lastOutputLayer);
+        for (int i = 0; i < neuralLayers.size(); i++) {
+            lastOutputLayer = propagateInto(workspace.getActivation(i), lastOutputLayer, neuralLayers.get(i));
         }
+        return lastOutputLayer;
+    }
+
+    /**
+     * Backpropagation, calculates weight gradients into workspace based on forward pass of the same inputs.
+     */
+    private void computeGradients(TrainingWorkspace workspace, Matrix inputs, Matrix outputs) {
+        int last = neuralLayers.size() - 1;
 
         //error for last layer
-        Matrix errorLast = MatrixMath.subtract(outputs, layerResults.get(layerResults.size() - 1));
+        MatrixMath.subtractInto(workspace.getError(last), outputs, workspace.getActivation(last));
 
-        //backpropagation
-        List<Matrix> reversedErrorLayers = new ArrayList<>();
-        reversedErrorLayers.add(errorLast);
-        for (int i = layerResults.size() - 2; i >= 0; i--) {
-            NeuralLayer neuralLayer = neuralLayers.get(i + 1);
-            errorLast = MatrixMath.multiply(errorLast, MatrixMath.transpose(neuralLayer.getWeights()));
-            reversedErrorLayers.add(errorLast);
+        //backpropagation, using weights from before the update
+        for (int i = last - 1; i >= 0; i--) {
+            MatrixMath.multiplyTransposeBInto(workspace.getError(i), workspace.getError(i + 1), neuralLayers.get(i + 1).getWeights());
         }
-        List<Matrix> errorLayers = new ArrayList<>(reversedErrorLayers);
-        Collections.reverse(errorLayers);
 
-        //modification with propagation
-        Matrix propagatedInput = inputs;
-        for (int i = 0; i < neuralLayers.size(); i++) {
+        //gradients
+        for (int i = last; i >= 0; i--) {
             NeuralLayer layer = neuralLayers.get(i);
-            Matrix tmpPropagate = propagate(propagatedInput, layer);
-            Matrix deltaLayer = MatrixMath.scalarMultiply(errorLayers.get(i), NLMath.applyFunctionDerivative(tmpPropagate));
-            Matrix adjustmentLayer = MatrixMath.multiply(MatrixMath.transpose(propagatedInput), deltaLayer);
-            layer.adjustWeights(MatrixMath.scale(adjustmentLayer, customLearningRate));
-            propagatedInput = propagate(propagatedInput, layer);
+            Matrix layerInput = i == 0 ? inputs : workspace.getActivation(i - 1);
+            Matrix deltaLayer = NLMath.multiplyByFunctionDerivativeInPlace(workspace.getError(i), workspace.getActivation(i), layer.getActivationFunction());
+            MatrixMath.multiplyTransposeAInto(workspace.getGradient(i), layerInput, deltaLayer);
+        }
+    }
+
+    /**
+     * Modification of weights with gradients from workspace.
+     */
+    private void applyGradients(TrainingWorkspace workspace, double customLearningRate) {
+        for (int i = 0; i < neuralLayers.size(); i++) {
+            neuralLayers.get(i).adjustWeights(workspace.getGradient(i), customLearningRate);
         }
     }
 
+    /**
+     * Calculates average deviation with batched forward passes through training workspace - whole set at once in full
+     * batch mode, in this case workspace keeps the forward pass for following update. In data-parallel mode shards are
+     * evaluated in parallel.
+     */
     private double getDeviation(Matrix inputs, Matrix outputs, double maxDeviation) {
+        int chunk = isFullBatch(inputs) ? inputs.getHeight() : batchSize;
         double deviation = 0;
-        for (int i = 0; i < inputs.getHeight(); i++) {
-            Matrix input = inputs.getRowAsMatrix(i);
-            Matrix expectedOutput = outputs.getRowAsMatrix(i);
-            Matrix actualOutput = deduce(input);
-            deviation += MatrixMath.deviation(expectedOutput, actualOutput, maxDeviation);
+        for (int from = 0; from < inputs.getHeight(); from += chunk) {
+            int to = Math.min(from + chunk, inputs.getHeight());
+            Matrix chunkInputs = inputs.getRowsView(from, to);
+            Matrix chunkOutputs = outputs.getRowsView(from, to);
+            if (isDataParallel(chunkInputs)) {
+                ShardedWorkspace workspace = getShardedWorkspace(chunkInputs.getHeight());
+                double[] shardDeviations = new double[workspace.getShardCount()];
+                workspace.invoke((shard, shardWorkspace, shardFrom, shardTo) -> {
+                    Matrix actualOutput = forward(shardWorkspace, chunkInputs.getRowsView(shardFrom, shardTo));
+                    shardDeviations[shard] = MatrixMath.deviationSum(chunkOutputs.getRowsView(shardFrom, shardTo), actualOutput, maxDeviation);
+                }, false);
+                for (double shardDeviation : shardDeviations) {
+                    deviation += shardDeviation;
+                }
+            } else {
+                Matrix actualOutput = forward(getTrainingWorkspace(chunkInputs.getHeight()), chunkInputs);
+                deviation += MatrixMath.deviationSum(chunkOutputs, actualOutput, maxDeviation);
+            }
         }
         return deviation / inputs.getHeight();
     }
 
+    List<NeuralLayer> getNeuralLayers() {
+        return neuralLayers;
+    }
+
+    double getInitialLearningRate() {
+        return initialLearningRate;
+    }
+
+    double getMaxDeviation() {
+        return maxDeviation;
+    }
+
+    //adds deviation of multistart trained outside of this class to history
+    void addResult(double deviation) {
+        resultsHistory.add(deviation);
+    }
+
     public NeuralLayer getFirstLayer() {
         return neuralLayers.get(0);
     }
@@ -282,9 +621,29 @@ public class NeuralNetwork {
          * Whether neural network should still be learning.
          */
         boolean isContinueLearning();
+
+        /**
+         * Receives progress of training, from 0 to 1. Only called if progress is known (for iteration and update
+         * ending conditions).
+         */
+        default void reportProgress(double progress) {
+        }
     }
 
 
+    /**
+     * Interface notified after every training iteration, between weight updates, for example to take checkpoint of
+     * network.
+     */
+    @FunctionalInterface
+    public interface CheckpointListener {
+        /**
+         * Called after every iteration of training.
+         * @param totalIterations all-time number of iterations of network
+         */
+        void onIteration(int totalIterations);
+    }
+
     /**
      * Defines ending condition for neural network training.
      */
@@ -300,12 +659,27 @@ public class NeuralNetwork {
          * @param iteration current iteration
          */
         public boolean canIterate(double deviation, int iteration) {
+            return canIterate(deviation, iteration, iteration);
+        }
+
+        /**
+         * Denotes whether neural network should still iterate depending on this ending condition.
+         * @param deviation current deviation
+         * @param iteration current iteration (epoch)
+         * @param updates number of weight updates performed so far
+         */
+        public boolean canIterate(double deviation, int iteration, int updates) {
             switch (learningStopConditionType) {
                 case ITERATION:
                     if (iteration <= val) {
                         return true;
                     }
                     break;
+                case UPDATE:
+                    if (updates < val) {
+                        return true;
+                    }
+                    break;
                 case ERROR:
                     if (deviation >= val) {
                         return true;
@@ -321,6 +695,32 @@ public class NeuralNetwork {
             return false;
         }
 
+        /**
+         * Returns progress towards this ending condition (from 0 to 1), or -1 if it is not known.
+         * @param iteration current iteration (epoch)
+         * @param updates number of weight updates performed so far
+         */
+        public double getProgress(int iteration, int updates) {
+            switch (learningStopConditionType) {
+                case ITERATION:
+                    return Math.min(iteration / (val + 1), 1);
+                case UPDATE:
+                    return val <= 0 ? 1 : Math.min(updates / val, 1);
+                default:
+                    return -1;
+            }
+        }
+
+        /**
+         * Returns how many weight updates might still be performed, given number of already performed updates.
+         */
+        public int getUpdateLimit(int updates) {
+            if (learningStopConditionType == LearningStopConditionType.UPDATE) {
+                return (int) Math.max(Math.ceil(val) - updates, 0);
+            }
+            return Integer.MAX_VALUE;
+        }
+
         /**
          * Writes information about learning progress to logger
          */
@@ -335,6 +735,9 @@ public class NeuralNetwork {
                 case ERROR_DIFFERENCE:
                     getLogger().log("until target difference" + val);
                     break;
+                case UPDATE:
+                    getLogger().log("of " + val + " updates");
+                    break;
             }
         }
     }
@@ -360,14 +763,86 @@ public class NeuralNetwork {
         return this;
     }
 
+    /**
+     * Sets number of learning cases used for single weight update (mini-batch size). 0 means all learning cases (full
+     * batch).
+     */
+    public NeuralNetwork setBatchSize(int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("Batch size cannot be negative, was " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets number of shards every batch is split into for data-parallel training. Gradients of shards are calculated
+     * in parallel and summed before a single weight update. 0 or 1 means single thread training.
+     */
+    public NeuralNetwork setDataParallelism(int dataParallelism) {
+        if (dataParallelism < 0) {
+            throw new IllegalArgumentException("Data parallelism cannot be negative, was " + dataParallelism);
+        }
+        this.dataParallelism = dataParallelism;
+        return this;
+    }
+
+    /**
+     * Sets number of workers for asynchronous (Hogwild-style) training. Workers train on separate mini-batches at the
+     * same time and update shared weights without locks, which trades determinism for throughput. Only used with
+     * mini-batches (see setBatchSize). 0 or 1 means synchronous training.
+     */
+    public NeuralNetwork setAsynchronousWorkers(int asynchronousWorkers) {
+        if (asynchronousWorkers < 0) {
+            throw new IllegalArgumentException("Number of asynchronous workers cannot be negative, was " + asynchronousWorkers);
+        }
+        this.asynchronousWorkers = asynchronousWorkers;
+        return this;
+    }
+
+    /**
+     * Sets optimizer of all layers, resetting their optimizer state. Adaptive optimizers (RMSProp, Adam) usually need
+     * much smaller learning rate than gradient descent.
+     */
+    public NeuralNetwork setOptimizer(Optimizer optimizer) {
+        for (NeuralLayer neuralLayer : neuralLayers) {
+            neuralLayer.setOptimizer(optimizer);
+        }
+        return this;
+    }
+
+    /**
+     * Sets activation function of all hidden layers (all but the output layer).
+     */
+    public NeuralNetwork setHiddenActivationFunction(ActivationFunction activationFunction) {
+        for (int i = 0; i < neuralLayers.size() - 1; i++) {
+            neuralLayers.get(i).setActivationFunction(activationFunction);
+        }
+        return this;
+    }
+
+    /**
+     * Sets activation function of the output layer.
+     */
+    public NeuralNetwork setOutputActivationFunction(ActivationFunction activationFunction) {
+        getLastLayer().setActivationFunction(activationFunction);
+        return this;
+    }
+
     /**
      * Enum that describes ending conditions
      */
     public enum LearningStopConditionType {
         /**
-         * Ending condition that is dependent on iteration count (in current learning batch, not all-time)
+         * Ending condition that is dependent on iteration count (in current learning batch, not all-time). With
+         * mini-batches one iteration is one epoch.
          */
         ITERATION,
+        /**
+         * Ending condition that is dependent on weight update count (in current learning batch, not all-time). Equal to
+         * iteration count, unless mini-batches are used.
+         */
+        UPDATE,
         /**
          * Ending condition that is dependent on error value (deviation value)
          */
@@ -0,0 +1,134 @@
+package pl.ksitarski.imageclassifier.neuralnetwork;
+
+import pl.ksitarski.imageclassifier.neuralnetwork.math.MatrixMath;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Training workspaces for data-parallel training. Batch is split into shards of consecutive learning cases, every
+ * shard uses its own workspace (and gradients), so shards can be processed on separate threads.
+ */
+class ShardedWorkspace {
+    private final TrainingWorkspace[] workspaces;
+    private final int capacity;
+    private int batchSize;
+
+    /**
+     * Default constructor.
+     * @param neuralLayers layers of network that will be trained
+     * @param capacity biggest supported batch size
+     * @param shardCount number of shards, should not be bigger than capacity
+     */
+    ShardedWorkspace(List<NeuralLayer> neuralLayers, int capacity, int shardCount) {
+        this.capacity = capacity;
+        workspaces = new TrainingWorkspace[shardCount];
+        int shardCapacity = (capacity + shardCount - 1) / shardCount;
+        for (int i = 0; i < shardCount; i++) {
+            workspaces[i] = new TrainingWorkspace(neuralLayers, shardCapacity);
+        }
+        batchSize = capacity;
+    }
+
+    /**
+     * Whether this workspace can be used for given network, batch size and number of shards.
+     */
+    boolean fits(List<NeuralLayer> neuralLayers, int batchSize, int shardCount) {
+        return batchSize <= capacity && shardCount == workspaces.length && workspaces[0].fits(neuralLayers, getShardCapacity(batchSize));
+    }
+
+    /**
+     * Sets number of learning cases processed in next iteration.
+     */
+    void setBatchSize(int batchSize) {
+        if (batchSize > capacity) {
+            throw new IllegalArgumentException("Batch size " + batchSize + " is bigger than workspace capacity " + capacity);
+        }
+        this.batchSize = batchSize;
+    }
+
+    int getShardCount() {
+        return workspaces.length;
+    }
+
+    /**
+     * Returns workspace of given shard. After invoke with gradient reduction, gradients of first shard hold sum of
+     * gradients of all shards.
+     */
+    TrainingWorkspace getWorkspace(int shard) {
+        return workspaces[shard];
+    }
+
+    /**
+     * Runs given action for every shard in parallel and waits for all of them.
+     * @param action action to run
+     * @param reduceGradients whether gradients of all shards should be summed (pairwise, as a tree) into first shard
+     */
+    void invoke(ShardAction action, boolean reduceGradients) {
+        TrainingPool.get().invoke(new ShardTask(action, reduceGradients, 0, workspaces.length));
+    }
+
+    private int getShardCapacity(int batchSize) {
+        return (batchSize + workspaces.length - 1) / workspaces.length;
+    }
+
+    private int getShardStart(int shard) {
+        return (int) ((long) shard * batchSize / workspaces.length);
+    }
+
+    /**
+     * Action done on single shard.
+     */
+    @FunctionalInterface
+    interface ShardAction {
+        /**
+         * @param shard index of shard
+         * @param workspace workspace of this shard, set for number of learning cases in this shard
+         * @param from first learning case (row) of this shard
+         * @param to learning case (row) after last one of this shard
+         */
+        void run(int shard, TrainingWorkspace workspace, int from, int to);
+    }
+
+    /**
+     * Task that splits range of shards in halves until single shard is left. If gradients are reduced, after both halves
+     * are done, gradients of first shard of second half are added to first shard of first half.
+     */
+    private class ShardTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ShardAction action;
+        private final boolean reduceGradients;
+        private final int shardFrom;
+        private final int shardTo;
+
+        ShardTask(ShardAction action, boolean reduceGradients, int shardFrom, int shardTo) {
+            this.action = action;
+            this.reduceGradients = reduceGradients;
+            this.shardFrom = shardFrom;
+            this.shardTo = shardTo;
+        }
+
+        @Override
+        protected void compute() {
+            if (shardTo - shardFrom == 1) {
+                int from = getShardStart(shardFrom);
+                int to = getShardStart(shardFrom + 1);
+                TrainingWorkspace workspace = workspaces[shardFrom];
+                workspace.setBatchSize(to - from);
+                action.run(shardFrom, workspace, from, to);
+                return;
+            }
+            int half = (shardFrom + shardTo) / 2;
+            invokeAll(new ShardTask(action, reduceGradients, shardFrom, half),
+                    new ShardTask(action, reduceGradients, half, shardTo));
+            if (reduceGradients) {
+                TrainingWorkspace left = workspaces[shardFrom];
+                TrainingWorkspace right = workspaces[half];
+                for (int i = 0; i < left.getLayerCount(); i++) {
+                    MatrixMath.addScaled(left.getGradient(i), right.getGradient(i), 1);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package pl.ksitarski.imageclassifier.neuralnetwork;
+
+import pl.ksitarski.imageclassifier.neuralnetwork.math.ActivationFunction;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Matrix;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.MatrixMath;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.NLMath;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Precision;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Trains many multistart candidates of the same structure together. First layer weights of all candidates are stacked
+ * column-wise into single matrix, so that inputs are read once per iteration for all candidates (one multiplication
+ * for forward pass and one for gradient). Deeper layers are multiplied separately for every candidate, in parallel.
+ * Every candidate is trained exactly like by trainMultistart (full batch, own learning rate and optimizer).
+ */
+public class StackedMultistart {
+    private final List<NeuralNetwork> candidates;
+    private final Matrix inputs;
+    private final Matrix outputs;
+    private final int[] neuronCounts;
+    private final ActivationFunction firstActivationFunction;
+
+    private final Matrix stackedWeights; //first layer weights of all candidates, inputs x (candidates * neurons)
+    private final Matrix stackedGradient;
+    //per layer: activations, errors and gradients of all candidates, candidate has its own block of columns
+    private final Matrix[] activations;
+    private final Matrix[] errors;
+    private final Matrix[] gradients;
+
+    private NeuralNetwork.WorkingInterface workingInterface;
+
+    /**
+     * Constructor.
+     * @param candidates networks that should be trained, see isStackable
+     * @param inputs inputs for neural networks
+     * @param outputs outputs for neural networks
+     */
+    public StackedMultistart(List<NeuralNetwork> candidates, Matrix inputs, Matrix outputs) {
+        if (!isStackable(candidates, inputs)) {
+            throw new IllegalArgumentException("Networks cannot be trained together");
+        }
+        NeuralNetwork first = candidates.get(0);
+        Precision precision = first.getPrecision();
+        List<NeuralLayer> layers = first.getNeuralLayers();
+        int count = candidates.size();
+        this.candidates = candidates;
+        this.inputs = inputs.toPrecision(precision);
+        this.outputs = outputs.toPrecision(precision);
+        neuronCounts = new int[layers.size()];
+        activations = new Matrix[layers.size()];
+        errors = new Matrix[layers.size()];
+        gradients = new Matrix[layers.size()];
+        for (int i = 0; i < layers.size(); i++) {
+            NeuralLayer layer = layers.get(i);
+            neuronCounts[i] = layer.getNeuronCount();
+            activations[i] = new Matrix(inputs.getHeight(), count * layer.getNeuronCount(), precision);
+            errors[i] = new Matrix(inputs.getHeight(), count * layer.getNeuronCount(), precision);
+            gradients[i] = new Matrix(layer.getInputCount(), count * layer.getNeuronCount(), precision);
+        }
+        firstActivationFunction = layers.get(0).getActivationFunction();
+        stackedWeights = new Matrix(layers.get(0).getInputCount(), count * neuronCounts[0], precision);
+        stackedGradient = gradients[0];
+    }
+
+    /**
+     * Whether given networks can be trained together: all of them must have the same structure, precision and first
+     * layer activation function, and must be trained in full batch mode.
+     */
+    public static boolean isStackable(List<NeuralNetwork> candidates, Matrix inputs) {
+        if (candidates.size() < 2) {
+            return false;
+        }
+        List<NeuralLayer> firstLayers = candidates.get(0).getNeuralLayers();
+        for (NeuralNetwork candidate : candidates) {
+            List<NeuralLayer> layers = candidate.getNeuralLayers();
+            if (!candidate.isFullBatch(inputs) || layers.size() != firstLayers.size()
+                    || layers.get(0).getActivationFunction() != firstLayers.get(0).getActivationFunction()) {
+                return false;
+            }
+            for (int i = 0; i < layers.size(); i++) {
+                if (!layers.get(i).isCopyableFrom(firstLayers.get(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets working interface that is asked between iterations whether training should continue.
+     */
+    public void setWorkingInterface(NeuralNetwork.WorkingInterface workingInterface) {
+        this.workingInterface = workingInterface;
+    }
+
+    /**
+     * Trains all candidates for given number of iterations. Can be called many times, continuing training. Stops
+     * before given number of iterations if working interface asks to stop.
+     * @return deviations of candidates after training, in order of candidates
+     */
+    public double[] train(int iterations) {
+        forEachCandidate(c -> getView(stackedWeights, 0, c).copyFrom(getFirstLayer(c).getWeights()));
+        for (int i = 0; i < iterations; i++) {
+            if (workingInterface != null && !workingInterface.isContinueLearning()) {
+                break;
+            }
+            iterate();
+        }
+        forEachCandidate(c -> getFirstLayer(c).getWeights().copyFrom(getView(stackedWeights, 0, c)));
+
+        double[] deviations = new double[candidates.size()];
+        forward();
+        forEachCandidate(c -> {
+            NeuralNetwork candidate = candidates.get(c);
+            Matrix actualOutput = getView(activations[activations.length - 1], activations.length - 1, c);
+            deviations[c] = MatrixMath.deviationSum(outputs, actualOutput, candidate.getMaxDeviation()) / inputs.getHeight();
+            candidate.addResult(deviations[c]);
+        });
+        return deviations;
+    }
+
+    private void iterate() {
+        int last = neuronCounts.length - 1;
+        forward();
+        forEachCandidate(c -> {
+            List<NeuralLayer> layers = candidates.get(c).getNeuralLayers();
+            //error for last layer
+            MatrixMath.subtractInto(getView(errors[last], last, c), outputs, getView(activations[last], last, c));
+            //backpropagation, using weights from before the update
+            for (int i = last - 1; i >= 0; i--) {
+                MatrixMath.multiplyTransposeBInto(getView(errors[i], i, c), getView(errors[i + 1], i + 1, c), layers.get(i + 1).getWeights());
+            }
+        });
+
+        //gradient of first layer of all candidates at once
+        NLMath.multiplyByFunctionDerivativeInPlace(errors[0], activations[0], firstActivationFunction);
+        MatrixMath.multiplyTransposeAInto(stackedGradient, inputs, errors[0]);
+
+        forEachCandidate(c -> {
+            NeuralNetwork candidate = candidates.get(c);
+            List<NeuralLayer> layers = candidate.getNeuralLayers();
+            for (int i = last; i >= 1; i--) {
+                Matrix deltaLayer = NLMath.multiplyByFunctionDerivativeInPlace(getView(errors[i], i, c), getView(activations[i], i, c), layers.get(i).getActivationFunction());
+                MatrixMath.multiplyTransposeAInto(getView(gradients[i], i, c), getView(activations[i - 1], i - 1, c), deltaLayer);
+            }
+            //modification
+            NeuralLayer firstLayer = layers.get(0);
+            firstLayer.getOptimizer().update(getView(stackedWeights, 0, c), getView(stackedGradient, 0, c), firstLayer.getOptimizerState(), candidate.getInitialLearningRate());
+            for (int i = 1; i <= last; i++) {
+                layers.get(i).adjustWeights(getView(gradients[i], i, c), candidate.getInitialLearningRate());
+            }
+        });
+    }
+
+    //forward propagation of all candidates into activations
+    private void forward() {
+        NLMath.multiplyAndApplyFunctionInto(activations[0], inputs, stackedWeights, firstActivationFunction);
+        forEachCandidate(c -> {
+            List<NeuralLayer> layers = candidates.get(c).getNeuralLayers();
+            for (int i = 1; i < layers.size(); i++) {
+                NLMath.multiplyAndApplyFunctionInto(getView(activations[i], i, c), getView(activations[i - 1], i - 1, c), layers.get(i).getWeights(), layers.get(i).getActivationFunction());
+            }
+        });
+    }
+
+    private NeuralLayer getFirstLayer(int candidate) {
+        return candidates.get(candidate).getNeuralLayers().get(0);
+    }
+
+    //block of columns of given candidate in stacked matrix of given layer
+    private Matrix getView(Matrix stacked, int layer, int candidate) {
+        return stacked.getColumnsView(candidate * neuronCounts[layer], (candidate + 1) * neuronCounts[layer]);
+    }
+
+    private void forEachCandidate(IntConsumer action) {
+        TrainingPool.get().invoke(new CandidateTask(action, 0, candidates.size()));
+    }
+
+    /**
+     * Task that splits range of candidates in halves until single candidate is left.
+     */
+    private static class CandidateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final IntConsumer action;
+        private final int from;
+        private final int to;
+
+        CandidateTask(IntConsumer action, int from, int to) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                action.accept(from);
+                return;
+            }
+            int half = (from + to) / 2;
+            invokeAll(new CandidateTask(action, from, half), new CandidateTask(action, half, to));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package pl.ksitarski.imageclassifier.neuralnetwork;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Thread pool shared by parallel training (data-parallel shards and asynchronous workers) of all networks.
+ */
+final class TrainingPool {
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private TrainingPool() {
+    }
+
+    static ForkJoinPool get() {
+        return pool;
+    }
+}
@@ -0,0 +1,101 @@
+package pl.ksitarski.imageclassifier.neuralnetwork;
+
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Matrix;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Precision;
+
+import java.util.List;
+
+/**
+ * Buffers used by single training iteration of neural network: activations and errors of every layer (one row per
+ * learning case) and weight gradients. Buffers are allocated once for given batch size and reused between iterations.
+ */
+class TrainingWorkspace {
+    private final int capacity;
+    private final int[] neuronCounts;
+
+    private final Matrix[] activationBuffers;
+    private final Matrix[] errorBuffers;
+    private final Matrix[] gradients;
+
+    //views over buffers for current batch size
+    private int batchSize;
+    private final Matrix[] activations;
+    private final Matrix[] errors;
+
+    /**
+     * Default constructor.
+     * @param neuralLayers layers of network that will be trained
+     * @param capacity biggest supported batch size
+     */
+    TrainingWorkspace(List<NeuralLayer> neuralLayers, int capacity) {
+        int layerCount = neuralLayers.size();
+        this.capacity = capacity;
+        neuronCounts = new int[layerCount];
+        activationBuffers = new Matrix[layerCount];
+        errorBuffers = new Matrix[layerCount];
+        gradients = new Matrix[layerCount];
+        activations = new Matrix[layerCount];
+        errors = new Matrix[layerCount];
+        for (int i = 0; i < layerCount; i++) {
+            NeuralLayer neuralLayer = neuralLayers.get(i);
+            neuronCounts[i] = neuralLayer.getNeuronCount();
+            Precision precision = neuralLayer.getWeights().getPrecision();
+            activationBuffers[i] = new Matrix(capacity, neuralLayer.getNeuronCount(), precision);
+            errorBuffers[i] = new Matrix(capacity, neuralLayer.getNeuronCount(), precision);
+            gradients[i] = new Matrix(neuralLayer.getInputCount(), neuralLayer.getNeuronCount(), precision);
+        }
+        batchSize = capacity;
+        System.arraycopy(activationBuffers, 0, activations, 0, layerCount);
+        System.arraycopy(errorBuffers, 0, errors, 0, layerCount);
+    }
+
+    /**
+     * Whether this workspace can be used for given network and batch size.
+     */
+    boolean fits(List<NeuralLayer> neuralLayers, int batchSize) {
+        if (batchSize > capacity || neuralLayers.size() != neuronCounts.length) {
+            return false;
+        }
+        for (int i = 0; i < neuronCounts.length; i++) {
+            if (neuralLayers.get(i).getNeuronCount() != neuronCounts[i]
+                    || neuralLayers.get(i).getWeights().getPrecision() != gradients[i].getPrecision()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets number of learning cases processed in next iteration. Only creates new views if size differs from the last
+     * one.
+     */
+    void setBatchSize(int batchSize) {
+        if (batchSize > capacity) {
+            throw new IllegalArgumentException("Batch size " + batchSize + " is bigger than workspace capacity " + capacity);
+        }
+        if (batchSize == this.batchSize) {
+            return;
+        }
+        this.batchSize = batchSize;
+        for (int i = 0; i < neuronCounts.length; i++) {
+            activations[i] = activationBuffers[i].getRowsView(0, batchSize);
+            errors[i] = errorBuffers[i].getRowsView(0, batchSize);
+        }
+    }
+
+    int getLayerCount() {
+        return neuronCounts.length;
+    }
+
+    Matrix getActivation(int layer) {
+        return activations[layer];
+    }
+
+    Matrix getError(int layer) {
+        return errors[layer];
+    }
+
+    Matrix getGradient(int layer) {
+        return gradients[layer];
+    }
+}
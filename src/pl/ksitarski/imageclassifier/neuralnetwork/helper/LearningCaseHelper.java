@@ -1,6 +1,7 @@
 package pl.ksitarski.imageclassifier.neuralnetwork.helper;
 
 import pl.ksitarski.imageclassifier.neuralnetwork.math.Matrix;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Precision;
 
 /**
  * Builder-like structure that helps in creation of input and output data for classifier/neural network.
@@ -21,11 +22,22 @@ public class LearningCaseHelper {
      * @param outputs size of outputs
      */
     public LearningCaseHelper(int testCases, int inputs, int outputs) {
+        this(testCases, inputs, outputs, Precision.DOUBLE);
+    }
+
+    /**
+     * Constructor.
+     * @param testCases number of inputs/outputs
+     * @param inputs size of inputs
+     * @param outputs size of outputs
+     * @param precision precision in which inputs and outputs are stored
+     */
+    public LearningCaseHelper(int testCases, int inputs, int outputs, Precision precision) {
         this.testCases = testCases;
         this.inputs = inputs;
         this.outputs = outputs;
-        input = new Matrix(testCases, inputs);
-        output = new Matrix(testCases, outputs);
+        input = new Matrix(testCases, inputs, precision);
+        output = new Matrix(testCases, outputs, precision);
     }
 
     /**
@@ -48,15 +60,9 @@ public class LearningCaseHelper {
         if (getActualHeight() == input.getHeight()) {
             return;
         }
-        Matrix newInput = new Matrix(getActualHeight(), input.getWidth());
-        Matrix newOutput = new Matrix(getActualHeight(), output.getWidth());
         System.out.println("Trimmer. Height: " + input.getHeight() + ", actual height: " + getActualHeight());
-        for (int y = 0; y < getActualHeight(); y++) {
-            newInput.setRow(y, input.getRow(y));
-            newOutput.setRow(y, output.getRow(y));
-        }
-        input = newInput;
-        output = newOutput;
+        input = new Matrix(input.getRowsView(0, getActualHeight()));
+        output = new Matrix(output.getRowsView(0, getActualHeight()));
     }
 
     public int getActualHeight() {
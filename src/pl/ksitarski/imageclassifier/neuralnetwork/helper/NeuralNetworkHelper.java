@@ -1,14 +1,18 @@
 package pl.ksitarski.imageclassifier.neuralnetwork.helper;
 
+import pl.ksitarski.imageclassifier.neuralnetwork.InferenceNetwork;
 import pl.ksitarski.imageclassifier.neuralnetwork.NeuralNetwork;
+import pl.ksitarski.imageclassifier.neuralnetwork.StackedMultistart;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.ActivationFunction;
 import pl.ksitarski.imageclassifier.neuralnetwork.math.Matrix;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Optimizer;
+import pl.ksitarski.imageclassifier.neuralnetwork.math.Precision;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import static pl.ksitarski.imageclassifier.neuralnetwork.LoggerSettings.*;
 
@@ -20,6 +24,10 @@ public class NeuralNetworkHelper {
     private List<NeuralNetwork> neuralNetworkList = new ArrayList<>();
     private final int multistart;
     private boolean startComplete = false;
+    private long seed;
+    private int multistartBudget; //total number of iterations of all multistart candidates
+    private boolean isStackedMultistart = false;
+    private transient NeuralNetwork.WorkingInterface workingInterface;
 
     /**
      * Constructor
@@ -34,15 +42,67 @@ public class NeuralNetworkHelper {
      * @param multistart multistart thread count or 1
      */
     public NeuralNetworkHelper(int layers, int[] neuronsInLayer, int inputs, int outputs, double learningRate, double adjustLearningRate, double maxDeviation, boolean backup, int multistart) {
+        this(layers, neuronsInLayer, inputs, outputs, learningRate, adjustLearningRate, maxDeviation, backup, multistart, Precision.DOUBLE, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Constructor
+     * @param layers number of layers
+     * @param neuronsInLayer number of neurons per layer
+     * @param inputs input count
+     * @param outputs output count
+     * @param learningRate learning rate
+     * @param adjustLearningRate adjustment of learning rate
+     * @param maxDeviation maximum deviation, for error calculcation
+     * @param backup whether learning should be managed
+     * @param multistart multistart thread count or 1
+     * @param precision precision of network weights and computations
+     * @param seed master seed, from which random generators of all networks are derived - the same seed gives the same
+     *             networks
+     */
+    public NeuralNetworkHelper(int layers, int[] neuronsInLayer, int inputs, int outputs, double learningRate, double adjustLearningRate, double maxDeviation, boolean backup, int multistart, Precision precision, long seed) {
+        this.seed = seed;
+        SplittableRandom masterRandom = new SplittableRandom(seed);
+        getLogger().log("Random seed: " + seed);
         if (multistart == 1) {
-            bestNet = new NeuralNetwork(inputs, outputs, neuronsInLayer, layers, learningRate, backup, adjustLearningRate, maxDeviation);
+            bestNet = new NeuralNetwork(inputs, outputs, neuronsInLayer, layers, learningRate, backup, adjustLearningRate, maxDeviation, precision, masterRandom.split());
             startComplete = true;
         } else {
             for (int i = 0; i < multistart; i++) {
-                neuralNetworkList.add(new NeuralNetwork(inputs, outputs, neuronsInLayer, layers, learningRate, backup, adjustLearningRate, maxDeviation));
+                neuralNetworkList.add(new NeuralNetwork(inputs, outputs, neuronsInLayer, layers, learningRate, backup, adjustLearningRate, maxDeviation, precision, masterRandom.split()));
             }
         }
         this.multistart = multistart;
+        this.multistartBudget = multistart * 10;
+    }
+
+    /**
+     * Snapshot copy constructor, see NeuralNetwork snapshot copy constructor.
+     * @param other helper to copy
+     */
+    private NeuralNetworkHelper(NeuralNetworkHelper other) {
+        if (other.bestNet != null) {
+            bestNet = new NeuralNetwork(other.bestNet);
+        }
+        if (other.neuralNetworkList != null) {
+            for (NeuralNetwork neuralNetwork : other.neuralNetworkList) {
+                neuralNetworkList.add(new NeuralNetwork(neuralNetwork));
+            }
+        } else {
+            neuralNetworkList = null;
+        }
+        multistart = other.multistart;
+        startComplete = other.startComplete;
+        seed = other.seed;
+        multistartBudget = other.multistartBudget;
+        isStackedMultistart = other.isStackedMultistart;
+    }
+
+    /**
+     * Creates snapshot (deep copy) of network(s), that is not affected by further training.
+     */
+    public NeuralNetworkHelper snapshot() {
+        return new NeuralNetworkHelper(this);
     }
 
     /**
@@ -51,7 +111,9 @@ public class NeuralNetworkHelper {
     public void train(LearningCaseHelper learningCaseHelper, NeuralNetwork.LearningStopConditionTarget learningStopConditionTarget) {
         checkVariables(learningCaseHelper);
         if (!startComplete) {
-            selectBestNetwork(learningCaseHelper);
+            if (!selectBestNetwork(learningCaseHelper)) {
+                return;
+            }
             startComplete = true;
         }
         bestNet.train(learningCaseHelper.getInput(), learningCaseHelper.getOutput(), learningStopConditionTarget);
@@ -65,65 +127,128 @@ public class NeuralNetworkHelper {
     }
 
     /**
-     * Selects best network based on multistart process.
+     * Creates immutable, inference only copy of the best network with weights in given precision.
      */
-    private void selectBestNetwork(LearningCaseHelper learningCaseHelper) {
-        Executor executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        double[] accuracy = new double[multistart];
-        AtomicBoolean failure = new AtomicBoolean(false);
-
-        //multiple threads are launched
-
-        Semaphore semaphore = new Semaphore(0);
+    public InferenceNetwork compile(Precision precision) {
+        return getNeuronNetHelper().compile(precision);
+    }
 
-        getLogger().log("multistart for " + multistart + " start and " + Runtime.getRuntime().availableProcessors() + " threads");
+    /**
+     * Selects best network based on multistart process. Candidates are raced with successive halving: every round
+     * all remaining candidates are trained for the same number of iterations and worse half of them is dropped. Every
+     * round gets equal part of multistart budget, so survivors are trained for more iterations.
+     * @return whether best network was selected, false if multistart failed or was stopped by working interface (it is
+     * then continued by next training)
+     */
+    private boolean selectBestNetwork(LearningCaseHelper learningCaseHelper) {
+        double[] accuracy = new double[multistart];
+        List<Integer> candidates = new ArrayList<>();
         for (int i = 0; i < multistart; i++) {
-            int finalI = i;
-            executor.execute(() -> {
-                try {
-                    double tmp = neuralNetworkList.get(finalI).trainMultistart(learningCaseHelper.getInput(), learningCaseHelper.getOutput(), finalI);
-                    accuracy[finalI] = tmp;
-                    getLogger().log("multistart finished for id " + finalI + " with accuracy " + tmp);
-                } catch (Exception e) {
-                    failure.set(true);
-                    getLogger().log("Failed to iterate. Check if your settings are correct.");
-                    getLogger().log(e.toString());
-                } finally {
-                    semaphore.release();
-
-                }
-            });
+            candidates.add(i);
         }
+        int rounds = 32 - Integer.numberOfLeadingZeros(multistart - 1); //ceil(log2(multistart))
+        int roundBudget = Math.max(multistartBudget / rounds, 1);
 
-        //waiting for all threads to finish
-        semaphore.acquireUninterruptibly(multistart);
-        if (failure.get()) {
-            getLogger().log("Stopped training because of exception!");
-            return;
-        }
+        getLogger().log("multistart for " + multistart + " start and " + rounds + " rounds");
+        for (int round = 0; round < rounds; round++) {
+            int iterations = Math.max(roundBudget / candidates.size(), 1);
+            getLogger().log("multistart round " + round + ": " + candidates.size() + " candidates, " + iterations + " iterations each");
+            if (!trainCandidates(candidates, iterations, accuracy, learningCaseHelper)) {
+                getLogger().log("Stopped training because of exception!");
+                return false;
+            }
+            if (workingInterface != null && !workingInterface.isContinueLearning()) {
+                getLogger().log("Ending multistart because of stop request");
+                return false;
+            }
 
-        double bestAccuracy = 10;
-        int bestAccuracyIndex = 0;
+            //dropping worse half
+            candidates.sort((a, b) -> Double.compare(accuracy[a], accuracy[b]));
+            for (int candidate : candidates) {
+                getLogger().log("Accuracy for " + candidate + " is " + accuracy[candidate]);
+            }
+            candidates = new ArrayList<>(candidates.subList(0, (candidates.size() + 1) / 2));
+        }
 
         getLogger().log("multistart finished");
 
-        //selecting best accuracy
-        for (int i = 0; i < multistart; i++) {
-            getLogger().log("Accuracy for " + i + " is " + accuracy[i]);
-            if (accuracy[i] <= bestAccuracy) {
-                bestAccuracy = accuracy[i];
-                bestAccuracyIndex = i;
+        int bestAccuracyIndex = candidates.get(0);
+        double bestAccuracy = accuracy[bestAccuracyIndex];
+        getLogger().log("Best accuracy was for index " + bestAccuracyIndex + " (" + bestAccuracy + ")");
+        bestNet = neuralNetworkList.get(bestAccuracyIndex);
+        neuralNetworkList.clear();
+        neuralNetworkList = null;
+        return true;
+    }
+
+    /**
+     * Trains given multistart candidates in parallel on training scheduler (or together, if stacked multistart is
+     * enabled and possible), writing their deviations to accuracy array.
+     * @return whether all candidates were trained without exception
+     */
+    private boolean trainCandidates(List<Integer> candidates, int iterations, double[] accuracy, LearningCaseHelper learningCaseHelper) {
+        List<NeuralNetwork> networks = new ArrayList<>();
+        for (int candidate : candidates) {
+            networks.add(neuralNetworkList.get(candidate));
+        }
+        if (isStackedMultistart && StackedMultistart.isStackable(networks, learningCaseHelper.getInput())) {
+            try {
+                StackedMultistart stackedMultistart = new StackedMultistart(networks, learningCaseHelper.getInput(), learningCaseHelper.getOutput());
+                stackedMultistart.setWorkingInterface(workingInterface);
+                double[] results = stackedMultistart.train(iterations);
+                for (int i = 0; i < candidates.size(); i++) {
+                    accuracy[candidates.get(i)] = results[i];
+                    getLogger().log("multistart finished for id " + candidates.get(i) + " with accuracy " + results[i]);
+                }
+                return true;
+            } catch (Exception e) {
+                getLogger().log("Failed to iterate. Check if your settings are correct.");
+                getLogger().log(e.toString());
+                return false;
             }
         }
-        getLogger().log("Best accuracy was for index " + bestAccuracyIndex + " (" + bestAccuracy + ")");
+
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (int candidate : candidates) {
+            tasks.add(() -> neuralNetworkList.get(candidate).trainMultistart(learningCaseHelper.getInput(), learningCaseHelper.getOutput(), candidate, iterations));
+        }
+
+        List<Double> results;
         try {
-            Thread.sleep(1000);
+            results = TrainingScheduler.getInstance().invokeAll(tasks);
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            Thread.currentThread().interrupt();
+            getLogger().log("Multistart was interrupted");
+            return false;
+        } catch (ExecutionException e) {
+            getLogger().log("Failed to iterate. Check if your settings are correct.");
+            getLogger().log(e.getCause().toString());
+            return false;
         }
-        bestNet = neuralNetworkList.get(bestAccuracyIndex);
-        neuralNetworkList.clear();
-        neuralNetworkList = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            accuracy[candidates.get(i)] = results.get(i);
+            getLogger().log("multistart finished for id " + candidates.get(i) + " with accuracy " + results.get(i));
+        }
+        return true;
+    }
+
+    /**
+     * Sets total number of iterations of all multistart candidates, shared among successive halving rounds. Default is
+     * 10 iterations per candidate.
+     */
+    public void setMultistartBudget(int val) {
+        if (val < 1) {
+            throw new IllegalArgumentException("Multistart budget should be positive, was " + val);
+        }
+        multistartBudget = val;
+    }
+
+    /**
+     * Sets whether multistart candidates should be trained together, with first layers of all candidates stacked into
+     * one matrix. Only possible if all candidates are trained in full batch mode.
+     */
+    public void setStackedMultistart(boolean val) {
+        isStackedMultistart = val;
     }
 
     public void setLearningRate(double val) {
@@ -156,6 +281,66 @@ public class NeuralNetworkHelper {
         }
     }
 
+    public void setBatchSize(int val) {
+        if (bestNet != null) {
+            bestNet.setBatchSize(val);
+            return;
+        }
+        for (NeuralNetwork neuralNetwork : neuralNetworkList) {
+            neuralNetwork.setBatchSize(val);
+        }
+    }
+
+    public void setDataParallelism(int val) {
+        if (bestNet != null) {
+            bestNet.setDataParallelism(val);
+            return;
+        }
+        for (NeuralNetwork neuralNetwork : neuralNetworkList) {
+            neuralNetwork.setDataParallelism(val);
+        }
+    }
+
+    public void setAsynchronousWorkers(int val) {
+        if (bestNet != null) {
+            bestNet.setAsynchronousWorkers(val);
+            return;
+        }
+        for (NeuralNetwork neuralNetwork : neuralNetworkList) {
+            neuralNetwork.setAsynchronousWorkers(val);
+        }
+    }
+
+    public void setOptimizer(Optimizer val) {
+        if (bestNet != null) {
+            bestNet.setOptimizer(val);
+            return;
+        }
+        for (NeuralNetwork neuralNetwork : neuralNetworkList) {
+            neuralNetwork.setOptimizer(val);
+        }
+    }
+
+    public void setHiddenActivationFunction(ActivationFunction val) {
+        if (bestNet != null) {
+            bestNet.setHiddenActivationFunction(val);
+            return;
+        }
+        for (NeuralNetwork neuralNetwork : neuralNetworkList) {
+            neuralNetwork.setHiddenActivationFunction(val);
+        }
+    }
+
+    public void setOutputActivationFunction(ActivationFunction val) {
+        if (bestNet != null) {
+            bestNet.setOutputActivationFunction(val);
+            return;
+        }
+        for (NeuralNetwork neuralNetwork : neuralNetworkList) {
+            neuralNetwork.setOutputActivationFunction(val);
+        }
+    }
+
     private void checkVariables(LearningCaseHelper learningCaseHelper) {
         if (learningCaseHelper.getActualHeight() != learningCaseHelper.getInput().getHeight()) {
             throw new IllegalArgumentException("Number of test cases should match input height");
@@ -185,6 +370,7 @@ public class NeuralNetworkHelper {
 
 
     public void setWorkingInterface(NeuralNetwork.WorkingInterface workingInterface) {
+        this.workingInterface = workingInterface;
         if (bestNet != null) {
             bestNet.setWorkingInterface(workingInterface);
             return;
@@ -194,6 +380,32 @@ public class NeuralNetworkHelper {
         }
     }
 
+    public void setCheckpointListener(NeuralNetwork.CheckpointListener checkpointListener) {
+        if (bestNet != null) {
+            bestNet.setCheckpointListener(checkpointListener);
+            return;
+        }
+        for (NeuralNetwork neuralNetwork : neuralNetworkList) {
+            neuralNetwork.setCheckpointListener(checkpointListener);
+        }
+    }
+
+    /**
+     * Marks network so that next training continues with learning rate saved in checkpoint.
+     */
+    public void setResumed() {
+        if (bestNet != null) {
+            bestNet.setResumed();
+        }
+    }
+
+    /**
+     * Returns all-time number of iterations of selected network, or 0 if multistart did not finish yet.
+     */
+    public int getTotalIterations() {
+        return bestNet == null ? 0 : bestNet.getTotalIterations();
+    }
+
     public int getCategoriesCount() {
         if (bestNet != null) {
             return bestNet.getCategoriesCount();
@@ -204,4 +416,12 @@ public class NeuralNetworkHelper {
     public int getInputSize() {
         return bestNet.getInputSize();
     }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public Precision getPrecision() {
+        return getNeuronNetHelper().getPrecision();
+    }
 }
@@ -0,0 +1,96 @@
+package pl.ksitarski.imageclassifier.neuralnetwork.helper;
+
+import pl.ksitarski.imageclassifier.neuralnetwork.NeuralNetwork;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Future of training job submitted to TrainingScheduler. Cancellation is cooperative: job that is already running is
+ * asked to stop through working interface and finishes normally, job that did not start yet is never run.
+ */
+public class TrainingFuture<T> implements Future<T>, NeuralNetwork.WorkingInterface {
+    private final FutureTask<T> task;
+    private volatile boolean isStarted = false;
+    private volatile boolean isCancelRequested = false;
+    private volatile boolean isCancelObserved = false; //job saw cancel request, so it stops because of it
+    private volatile double progress = 0;
+
+    TrainingFuture(TrainingScheduler.TrainingJob<T> job) {
+        task = new FutureTask<>(() -> {
+            isStarted = true;
+            T result = job.run(this);
+            progress = 1;
+            return result;
+        });
+    }
+
+    FutureTask<T> getTask() {
+        return task;
+    }
+
+    /**
+     * Returns progress of job, from 0 to 1. Jobs without known end (for example trained until given deviation) stay
+     * at 0 until they finish.
+     */
+    public double getProgress() {
+        return progress;
+    }
+
+    public boolean isStarted() {
+        return isStarted;
+    }
+
+    @Override
+    public boolean isContinueLearning() {
+        if (isCancelRequested) {
+            isCancelObserved = true;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void reportProgress(double progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Requests job to stop. Running job is never interrupted.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        isCancelRequested = true;
+        if (!isStarted) {
+            task.cancel(false);
+        }
+        return !isDone();
+    }
+
+    /**
+     * Whether job was cancelled before it completed normally: it was never run, or it stopped because it saw the cancel
+     * request. Job that finished before noticing the request is not cancelled.
+     */
+    @Override
+    public boolean isCancelled() {
+        return task.isCancelled() || isCancelObserved;
+    }
+
+    @Override
+    public boolean isDone() {
+        return task.isDone();
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        return task.get();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        return task.get(timeout, unit);
+    }
+}
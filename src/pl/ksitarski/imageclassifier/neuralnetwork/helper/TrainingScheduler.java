@@ -0,0 +1,74 @@
+package pl.ksitarski.imageclassifier.neuralnetwork.helper;
+
+import pl.ksitarski.imageclassifier.neuralnetwork.NeuralNetwork;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service that runs training jobs (and multistart candidates) on single, shared pool with bounded number of threads.
+ * Threads of the pool are daemon threads, so they never keep application alive.
+ */
+public class TrainingScheduler {
+    private static final TrainingScheduler instance = new TrainingScheduler(Runtime.getRuntime().availableProcessors());
+
+    private final ExecutorService executor;
+
+    private TrainingScheduler(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "training-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static TrainingScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Submits training job.
+     * @return future, that allows to check progress of job and to stop it
+     */
+    public <T> TrainingFuture<T> submit(TrainingJob<T> job) {
+        TrainingFuture<T> future = new TrainingFuture<>(job);
+        executor.execute(future.getTask());
+        return future;
+    }
+
+    /**
+     * Runs all tasks and waits for their results. Calling thread runs tasks that were not started yet by the pool, so
+     * this method can be safely used by jobs that are already running on this scheduler.
+     * @return results of tasks, in order of tasks
+     */
+    public <T> List<T> invokeAll(List<Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        List<FutureTask<T>> futures = new ArrayList<>();
+        for (Callable<T> task : tasks) {
+            FutureTask<T> future = new FutureTask<>(task);
+            futures.add(future);
+            executor.execute(future);
+        }
+        List<T> results = new ArrayList<>();
+        for (FutureTask<T> future : futures) {
+            future.run(); //does nothing if thread of pool already started this task
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    /**
+     * Training job. Job should stop (cooperatively) when given working interface says so, for example by passing it to
+     * neural network, and might report its progress through it.
+     */
+    @FunctionalInterface
+    public interface TrainingJob<T> {
+        T run(NeuralNetwork.WorkingInterface workingInterface) throws Exception;
+    }
+}
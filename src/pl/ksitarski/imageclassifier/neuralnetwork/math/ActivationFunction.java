@@ -0,0 +1,200 @@
+package pl.ksitarski.imageclassifier.neuralnetwork.math;
+
+/**
+ * Activation functions that can be used by neuron layers. Derivatives are calculated from value of the activation
+ * function (output of neuron), not from its argument.
+ */
+public enum ActivationFunction {
+    /**
+     * Logistic function 1 / (1 + e^-v). Might use lookup table or SIMD, see NLMath.
+     */
+    SIGMOID {
+        @Override
+        public double apply(double v) {
+            return NLMath.activationFunction(v);
+        }
+
+        @Override
+        public double derivative(double activation) {
+            return activation * (1 - activation);
+        }
+    },
+    /**
+     * Rectified linear unit max(0, v). Both function and its derivative are a single comparison.
+     */
+    RELU {
+        @Override
+        public double apply(double v) {
+            return v > 0 ? v : 0;
+        }
+
+        @Override
+        public double derivative(double activation) {
+            return activation > 0 ? 1 : 0;
+        }
+    },
+    /**
+     * Rectified linear unit that lets small gradient through for negative values: v or 0.01 * v.
+     */
+    LEAKY_RELU {
+        @Override
+        public double apply(double v) {
+            return v > 0 ? v : LEAKY_SLOPE * v;
+        }
+
+        @Override
+        public double derivative(double activation) {
+            return activation > 0 ? 1 : LEAKY_SLOPE;
+        }
+    },
+    /**
+     * Piecewise linear approximation of sigmoid: 0.2 * v + 0.5 clamped to [0, 1].
+     */
+    HARD_SIGMOID {
+        @Override
+        public double apply(double v) {
+            return Math.max(0, Math.min(1, HARD_SIGMOID_SLOPE * v + 0.5));
+        }
+
+        @Override
+        public double derivative(double activation) {
+            return activation > 0 && activation < 1 ? HARD_SIGMOID_SLOPE : 0;
+        }
+    };
+
+    private static final double LEAKY_SLOPE = 0.01;
+    private static final double HARD_SIGMOID_SLOPE = 0.2;
+
+    /**
+     * Calculates value of activation function.
+     */
+    public abstract double apply(double v);
+
+    /**
+     * Calculates value of derivative of activation function, based on value of activation function.
+     */
+    public abstract double derivative(double activation);
+
+    /**
+     * Applies this function to continuous range of values. Every function has its own loop, so that no call is made
+     * per value.
+     */
+    void apply(double[] data, int offset, double[] resultData, int resultOffset, int length) {
+        switch (this) {
+            case SIGMOID:
+                NLMath.applySigmoid(data, offset, resultData, resultOffset, length);
+                break;
+            case RELU:
+                for (int x = 0; x < length; x++) {
+                    double v = data[offset + x];
+                    resultData[resultOffset + x] = v > 0 ? v : 0;
+                }
+                break;
+            case LEAKY_RELU:
+                for (int x = 0; x < length; x++) {
+                    double v = data[offset + x];
+                    resultData[resultOffset + x] = v > 0 ? v : LEAKY_SLOPE * v;
+                }
+                break;
+            case HARD_SIGMOID:
+                for (int x = 0; x < length; x++) {
+                    double v = HARD_SIGMOID_SLOPE * data[offset + x] + 0.5;
+                    resultData[resultOffset + x] = v < 0 ? 0 : (v > 1 ? 1 : v);
+                }
+                break;
+        }
+    }
+
+    //single precision version of apply
+    void apply(float[] data, int offset, float[] resultData, int resultOffset, int length) {
+        switch (this) {
+            case SIGMOID:
+                NLMath.applySigmoid(data, offset, resultData, resultOffset, length);
+                break;
+            case RELU:
+                for (int x = 0; x < length; x++) {
+                    float v = data[offset + x];
+                    resultData[resultOffset + x] = v > 0 ? v : 0;
+                }
+                break;
+            case LEAKY_RELU:
+                for (int x = 0; x < length; x++) {
+                    float v = data[offset + x];
+                    resultData[resultOffset + x] = v > 0 ? v : (float) LEAKY_SLOPE * v;
+                }
+                break;
+            case HARD_SIGMOID:
+                for (int x = 0; x < length; x++) {
+                    float v = (float) HARD_SIGMOID_SLOPE * data[offset + x] + 0.5f;
+                    resultData[resultOffset + x] = v < 0 ? 0 : (v > 1 ? 1 : v);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Multiplies continuous range of values by derivative calculated from given activations.
+     */
+    void multiplyByDerivative(double[] data, int offset, double[] activations, int activationsOffset, int length) {
+        switch (this) {
+            case SIGMOID:
+                for (int x = 0; x < length; x++) {
+                    double activation = activations[activationsOffset + x];
+                    data[offset + x] *= activation * (1 - activation);
+                }
+                break;
+            case RELU:
+                for (int x = 0; x < length; x++) {
+                    if (activations[activationsOffset + x] <= 0) {
+                        data[offset + x] = 0;
+                    }
+                }
+                break;
+            case LEAKY_RELU:
+                for (int x = 0; x < length; x++) {
+                    if (activations[activationsOffset + x] <= 0) {
+                        data[offset + x] *= LEAKY_SLOPE;
+                    }
+                }
+                break;
+            case HARD_SIGMOID:
+                for (int x = 0; x < length; x++) {
+                    double activation = activations[activationsOffset + x];
+                    data[offset + x] *= activation > 0 && activation < 1 ? HARD_SIGMOID_SLOPE : 0;
+                }
+                break;
+        }
+    }
+
+    //single precision version of multiplyByDerivative
+    void multiplyByDerivative(float[] data, int offset, float[] activations, int activationsOffset, int length) {
+        switch (this) {
+            case SIGMOID:
+                for (int x = 0; x < length; x++) {
+                    float activation = activations[activationsOffset + x];
+                    data[offset + x] *= activation * (1 - activation);
+                }
+                break;
+            case RELU:
+                for (int x = 0; x < length; x++) {
+                    if (activations[activationsOffset + x] <= 0) {
+                        data[offset + x] = 0;
+                    }
+                }
+                break;
+            case LEAKY_RELU:
+                for (int x = 0; x < length; x++) {
+                    if (activations[activationsOffset + x] <= 0) {
+                        data[offset + x] *= (float) LEAKY_SLOPE;
+                    }
+                }
+                break;
+            case HARD_SIGMOID:
+                for (int x = 0; x < length; x++) {
+                    float activation = activations[activationsOffset + x];
+                    data[offset + x] *= activation > 0 && activation < 1 ? (float) HARD_SIGMOID_SLOPE : 0;
+                }
+                break;
+        }
+    }
+}
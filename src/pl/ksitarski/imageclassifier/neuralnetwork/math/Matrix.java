@@ -1,38 +1,72 @@
 package pl.ksitarski.imageclassifier.neuralnetwork.math;
 
+import com.google.gson.annotations.JsonAdapter;
 import pl.ksitarski.imageclassifier.neuralnetwork.LoggerSettings;
 
 import java.util.Arrays;
+import java.util.SplittableRandom;
 
 /**
- * Two dimensional matrix.
+ * Two dimensional matrix. Values are stored row-major in a single array, so a matrix might also be a view
+ * (row, rows or column) over storage of another matrix - such views do not copy data. Depending on precision,
+ * values are stored either in double or in float array. Matrices are (de)serialized by MatrixTypeAdapter, which also
+ * reads matrices from NNF files saved before flat storage.
  */
+@JsonAdapter(MatrixTypeAdapter.class)
 public class Matrix {
     private int height;
     private int width;
 
-    private double[][] matrix;
+    private int offset; //index of (0, 0) in data
+    private int stride; //distance between beginnings of two subsequent rows in data
+    private double[] data;
+    private float[] floatData; //used instead of data by single precision matrices
 
     /**
-     * Default constructor;
+     * Default constructor, creates double precision matrix;
      * @param height height of the matrix
      * @param width width of the matrix
      */
     public Matrix(int height, int width) {
+        this(height, width, Precision.DOUBLE);
+    }
+
+    /**
+     * Constructor.
+     * @param height height of the matrix
+     * @param width width of the matrix
+     * @param precision precision of values of the matrix
+     */
+    public Matrix(int height, int width, Precision precision) {
         this.height = height;
         this.width = width;
+        this.offset = 0;
+        this.stride = width;
 
-        matrix = new double[height][width];
+        if (precision == Precision.FLOAT) {
+            floatData = new float[height * width];
+        } else {
+            data = new double[height * width];
+        }
     }
 
     /**
-     * Deep copy constructor
+     * Deep copy constructor. Copy is always contiguous, even if copied matrix is a view.
      * @param other matrix to be copied
      */
     public Matrix(Matrix other) {
-        this.height = other.height;
-        this.width = other.width;
-        this.matrix = deepCopy(other.matrix);
+        this(other.height, other.width, other.getPrecision());
+        copyFrom(other);
+    }
+
+    //view constructor, also used by MatrixTypeAdapter
+    Matrix(double[] data, float[] floatData, int offset, int height, int width, int stride) {
+        this.data = data;
+        this.floatData = floatData;
+        this.offset = offset;
+        this.height = height;
+        this.width = width;
+        this.stride = stride;
     }
 
     /**
@@ -41,9 +75,78 @@ public class Matrix {
     public Matrix setRandom() {
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
-                matrix[y][x] = NLMath.getDoubleFromRange(-1, 1);
+                set(x, y, NLMath.getDoubleFromRange(-1, 1));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Sets all values of this matrix to random values, taken from given random generator.
+     */
+    public Matrix setRandom(SplittableRandom random) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                set(x, y, NLMath.getDoubleFromRange(random, -1, 1));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns precision of values of this matrix.
+     */
+    public Precision getPrecision() {
+        return floatData != null ? Precision.FLOAT : Precision.DOUBLE;
+    }
+
+    /**
+     * Returns this matrix if it already has given precision, or its copy converted to given precision.
+     */
+    public Matrix toPrecision(Precision precision) {
+        if (getPrecision() == precision) {
+            return this;
+        }
+        Matrix converted = new Matrix(height, width, precision);
+        converted.copyFrom(this);
+        return converted;
+    }
+
+    /**
+     * Copies values of given matrix (of the same size) into this matrix.
+     */
+    public Matrix copyFrom(Matrix other) {
+        checkEqual(other);
+        if (getPrecision() != other.getPrecision()) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    set(x, y, other.get(x, y));
+                }
             }
+            return this;
+        }
+        Object source = floatData != null ? other.floatData : other.data;
+        Object destination = floatData != null ? floatData : data;
+        if (isContiguous() && other.isContiguous()) {
+            System.arraycopy(source, other.offset, destination, offset, height * width);
+            return this;
+        }
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(source, other.offset + y * other.stride, destination, offset + y * stride, width);
+        }
+        return this;
+    }
+
+    /**
+     * Copies given row of other matrix (of the same width and precision) into given row of this matrix.
+     */
+    public Matrix copyRowFrom(int y, Matrix other, int otherY) {
+        if (width != other.width || getPrecision() != other.getPrecision()) {
+            throw new IllegalArgumentException("Cannot copy row of " + other.getSizeArray() + " " + other.getPrecision() + " to " + getSizeArray() + " " + getPrecision());
         }
+        Object source = floatData != null ? other.floatData : other.data;
+        Object destination = floatData != null ? floatData : data;
+        System.arraycopy(source, other.offset + otherY * other.stride, destination, offset + y * stride, width);
         return this;
     }
 
@@ -51,7 +154,11 @@ public class Matrix {
      * Sets given value in matrix at given position.
      */
     public Matrix set(int x, int y, double value) {
-        matrix[y][x] = value;
+        if (floatData != null) {
+            floatData[offset + y * stride + x] = (float) value;
+        } else {
+            data[offset + y * stride + x] = value;
+        }
         return this;
     }
 
@@ -67,7 +174,7 @@ public class Matrix {
             if (index >= width) {
                 throw new IllegalArgumentException(index + " (x) is equal or bigger than "  + width + "(width), which is strange");
             }
-            matrix[y][index] = val;
+            set(index, y, val);
             index++;
         }
         return this;
@@ -77,25 +184,94 @@ public class Matrix {
      * Returns value of this matrix at given positon.
      */
     public double get(int x, int y) {
-        return matrix[y][x];
+        if (floatData != null) {
+            return floatData[offset + y * stride + x];
+        }
+        return data[offset + y * stride + x];
     }
 
     /**
-     * Returns values of given row.
+     * Returns copy of values of given row.
      */
     public double[] getRow(int y) {
-        return matrix[y];
+        int rowStart = offset + y * stride;
+        if (floatData == null) {
+            return Arrays.copyOfRange(data, rowStart, rowStart + width);
+        }
+        double[] row = new double[width];
+        for (int x = 0; x < width; x++) {
+            row[x] = floatData[rowStart + x];
+        }
+        return row;
     }
 
     /**
-     * Returns values of given row as matrix.
+     * Returns copy of values of given row as matrix.
      */
     public Matrix getRowAsMatrix(int y) {
-        Matrix m = new Matrix(1, getWidth());
-        for (int i = 0; i < getWidth(); i++) {
-            m.set(i, 0, get(i, y));
+        return new Matrix(getRowView(y));
+    }
+
+    /**
+     * Returns view of given row as 1 x width matrix. View shares storage with this matrix.
+     */
+    public Matrix getRowView(int y) {
+        return getRowsView(y, y + 1);
+    }
+
+    /**
+     * Returns view of rows from given range (from inclusive, to exclusive). View shares storage with this matrix.
+     */
+    public Matrix getRowsView(int from, int to) {
+        if (from < 0 || to > height || from > to) {
+            throw new IllegalArgumentException("Rows " + from + " - " + to + " are out of bounds for " + getSizeArray());
+        }
+        return new Matrix(data, floatData, offset + from * stride, to - from, width, stride);
+    }
+
+    /**
+     * Returns view of given column as height x 1 matrix. View shares storage with this matrix.
+     */
+    public Matrix getColumnView(int x) {
+        if (x < 0 || x >= width) {
+            throw new IllegalArgumentException("Column " + x + " is out of bounds for " + getSizeArray());
+        }
+        return new Matrix(data, floatData, offset + x, height, 1, stride);
+    }
+
+    /**
+     * Returns view of columns from given range (from inclusive, to exclusive). View shares storage with this matrix.
+     */
+    public Matrix getColumnsView(int from, int to) {
+        if (from < 0 || to > width || from > to) {
+            throw new IllegalArgumentException("Columns " + from + " - " + to + " are out of bounds for " + getSizeArray());
         }
-        return m;
+        return new Matrix(data, floatData, offset + from, height, to - from, stride);
+    }
+
+    /**
+     * Whether values of this matrix occupy one continuous block of underlying storage.
+     */
+    public boolean isContiguous() {
+        return stride == width || height <= 1;
+    }
+
+    //raw storage access for math kernels
+
+    double[] getData() {
+        return data;
+    }
+
+    float[] getFloatData() {
+        return floatData;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    int getStride() {
+        return stride;
     }
 
     /**
@@ -127,12 +303,12 @@ public class Matrix {
     }
 
     /**
-     * Returns id of biggest value in given row.
+     * Returns id of biggest value in given row (values might be negative, for example outputs of RELU layer).
      */
     public int getBiggestIdInRow(int y) {
-        double biggest = Double.MIN_VALUE;
-        int biggestId = -1;
-        for (int x = 0; x < width; x++) {
+        double biggest = get(0, y);
+        int biggestId = 0;
+        for (int x = 1; x < width; x++) {
             double val = get(x, y);
             if (val > biggest) {
                 biggest = val;
@@ -147,9 +323,15 @@ public class Matrix {
      */
     public void add(Matrix m) {
         checkEqual(m);
+        if (floatData != null || m.floatData != null) {
+            MatrixMath.addScaled(this, m, 1);
+            return;
+        }
         for (int y = 0; y < height; y++) {
+            int rowStart = offset + y * stride;
+            int otherRowStart = m.offset + y * m.stride;
             for (int x = 0; x < width; x++) {
-                matrix[y][x] += m.matrix[y][x];
+                data[rowStart + x] += m.data[otherRowStart + x];
             }
         }
     }
@@ -182,16 +364,4 @@ public class Matrix {
                 '}';
     }
 
-
-    private static double[][] deepCopy(double[][] original) {
-        if (original == null) {
-            return null;
-        }
-
-        final double[][] result = new double[original.length][];
-        for (int i = 0; i < original.length; i++) {
-            result[i] = Arrays.copyOf(original[i], original[i].length);
-        }
-        return result;
-    }
 }
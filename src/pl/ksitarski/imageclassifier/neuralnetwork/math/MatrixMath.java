@@ -1,49 +1,555 @@
 package pl.ksitarski.imageclassifier.neuralnetwork.math;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * Contains matrix math related functions.
  */
 public class MatrixMath {
 
+    //size of square tile (in values) processed at once by multiplication kernels, 64 * 64 doubles fit in L1/L2 cache
+    private static final int BLOCK_SIZE = 64;
+
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    //multiplications with fewer multiply-add operations than this value are computed on calling thread
+    private static volatile long parallelThreshold = 1L << 21;
+
+    /**
+     * Sets minimal number of multiply-add operations (height * width * common dimension) from which multiplication is
+     * split into tiles computed in parallel. Long.MAX_VALUE disables parallel multiplication.
+     */
+    public static void setParallelThreshold(long operations) {
+        if (operations < 1) {
+            throw new IllegalArgumentException("Parallel threshold must be positive, was " + operations);
+        }
+        parallelThreshold = operations;
+    }
+
+    public static long getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    private static final VectorKernels availableVectorKernels = loadVectorKernels();
+
+    //SIMD implementation of inner loops, null if SIMD is disabled or not available
+    private static volatile VectorKernels vectorKernels = availableVectorKernels;
+
+    /**
+     * Whether SIMD kernels can be used - requires Java Vector API (jdk.incubator.vector module) and classes compiled
+     * from src-simd at runtime.
+     */
+    public static boolean isSimdAvailable() {
+        return availableVectorKernels != null;
+    }
+
+    /**
+     * Enables or disables SIMD kernels. SIMD is enabled by default if available, otherwise this call has no effect and
+     * scalar code is used.
+     */
+    public static void setSimdEnabled(boolean enabled) {
+        vectorKernels = enabled ? availableVectorKernels : null;
+    }
+
+    public static boolean isSimdEnabled() {
+        return vectorKernels != null;
+    }
+
+    static VectorKernels getVectorKernels() {
+        return vectorKernels;
+    }
+
+    private static VectorKernels loadVectorKernels() {
+        try {
+            Class.forName("jdk.incubator.vector.DoubleVector");
+            return (VectorKernels) Class.forName("pl.ksitarski.imageclassifier.neuralnetwork.math.SimdKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
     /**
      * Perform multiplication of two matrices and returns result.
      */
     public static Matrix multiply(Matrix a, Matrix b) {
-        Matrix result = new Matrix(a.getHeight(), b.getWidth());
+        return multiplyInto(new Matrix(a.getHeight(), b.getWidth(), a.getPrecision()), a, b);
+    }
+
+    /**
+     * Performs multiplication of two matrices and stores it in result, that must not share storage with a or b.
+     */
+    public static Matrix multiplyInto(Matrix result, Matrix a, Matrix b) {
+        checkSizes(a.getWidth(), b.getHeight(), "a width differs from b height", a, b);
+        checkResult(result, a.getHeight(), b.getWidth());
+        checkPrecision(result, a, b);
+        compute(MatrixMath::multiplyTile, a, b, result, a.getWidth());
+        return result;
+    }
+
+    /**
+     * Performs multiplication of transposed matrix A and matrix B and returns result. A is never transposed in memory.
+     */
+    public static Matrix multiplyTransposeA(Matrix a, Matrix b) {
+        return multiplyTransposeAInto(new Matrix(a.getWidth(), b.getWidth(), a.getPrecision()), a, b);
+    }
+
+    /**
+     * Performs multiplication of transposed matrix A and matrix B and stores it in result, that must not share storage
+     * with a or b.
+     */
+    public static Matrix multiplyTransposeAInto(Matrix result, Matrix a, Matrix b) {
+        checkSizes(a.getHeight(), b.getHeight(), "a height differs from b height", a, b);
+        checkResult(result, a.getWidth(), b.getWidth());
+        checkPrecision(result, a, b);
+        compute(MatrixMath::multiplyTransposeATile, a, b, result, a.getHeight());
+        return result;
+    }
 
-        int iit = a.getHeight();
-        int jit = a.getWidth();
-        int xit = b.getHeight();
-        int kit = b.getWidth();
+    /**
+     * Performs multiplication of matrix A and transposed matrix B and returns result. B is never transposed in memory.
+     */
+    public static Matrix multiplyTransposeB(Matrix a, Matrix b) {
+        return multiplyTransposeBInto(new Matrix(a.getHeight(), b.getHeight(), a.getPrecision()), a, b);
+    }
 
-        for (int i = 0; i < iit; i++) {
-            for (int k = 0; k < kit; k++) {
+    /**
+     * Performs multiplication of matrix A and transposed matrix B and stores it in result, that must not share storage
+     * with a or b.
+     */
+    public static Matrix multiplyTransposeBInto(Matrix result, Matrix a, Matrix b) {
+        checkSizes(a.getWidth(), b.getWidth(), "a width differs from b width", a, b);
+        checkResult(result, a.getHeight(), b.getHeight());
+        checkPrecision(result, a, b);
+        compute(MatrixMath::multiplyTransposeBTile, a, b, result, a.getWidth());
+        return result;
+    }
 
-                double sum = 0;
-                for (int j = 0; j < jit; j++) {
-                    sum += a.get(j, i) * b.get(k, j);
+    /**
+     * Performs multiplication of two matrices, applies activation function to it and stores it in result, that must
+     * not share storage with a or b. Activation function is applied to every tile right after it is computed, while
+     * it is still in cache.
+     */
+    static Matrix multiplyActivateInto(Matrix result, Matrix a, Matrix b, ActivationFunction activationFunction) {
+        checkSizes(a.getWidth(), b.getHeight(), "a width differs from b height", a, b);
+        checkResult(result, a.getHeight(), b.getWidth());
+        checkPrecision(result, a, b);
+        compute((a1, b1, result1, rowFrom, rowTo, colFrom, colTo) -> multiplyTile(a1, b1, result1, rowFrom, rowTo, colFrom, colTo, activationFunction),
+                a, b, result, a.getWidth());
+        return result;
+    }
+
+    static void multiplyTile(Matrix a, Matrix b, Matrix result, int rowFrom, int rowTo, int colFrom, int colTo) {
+        multiplyTile(a, b, result, rowFrom, rowTo, colFrom, colTo, null);
+    }
+
+    /**
+     * Calculates tile from given range of result = a * b, applying activation function to it if it is not null. Computation
+     * is tiled, so that the tiles of all three matrices stay in cache, and innermost loop goes over continuous rows of
+     * b and result.
+     */
+    private static void multiplyTile(Matrix a, Matrix b, Matrix result, int rowFrom, int rowTo, int colFrom, int colTo, ActivationFunction activationFunction) {
+        if (result.getPrecision() == Precision.FLOAT) {
+            multiplyTileFloat(a, b, result, rowFrom, rowTo, colFrom, colTo, activationFunction);
+            return;
+        }
+        double[] aData = a.getData();
+        double[] bData = b.getData();
+        double[] rData = result.getData();
+        VectorKernels vector = vectorKernels;
+        int common = a.getWidth();
+
+        clearTile(result, rowFrom, rowTo, colFrom, colTo);
+        for (int i0 = rowFrom; i0 < rowTo; i0 += BLOCK_SIZE) {
+            int i1 = Math.min(i0 + BLOCK_SIZE, rowTo);
+            for (int j0 = colFrom; j0 < colTo; j0 += BLOCK_SIZE) {
+                int j1 = Math.min(j0 + BLOCK_SIZE, colTo);
+                for (int p0 = 0; p0 < common; p0 += BLOCK_SIZE) {
+                    int p1 = Math.min(p0 + BLOCK_SIZE, common);
+                    for (int i = i0; i < i1; i++) {
+                        int aRow = a.getOffset() + i * a.getStride();
+                        int rRow = result.getOffset() + i * result.getStride();
+                        for (int p = p0; p < p1; p++) {
+                            double aValue = aData[aRow + p];
+                            int bRow = b.getOffset() + p * b.getStride();
+                            if (vector != null) {
+                                vector.axpy(aValue, bData, bRow + j0, rData, rRow + j0, j1 - j0);
+                                continue;
+                            }
+                            for (int j = j0; j < j1; j++) {
+                                rData[rRow + j] += aValue * bData[bRow + j];
+                            }
+                        }
+                    }
+                }
+                if (activationFunction != null) { //tile of result is complete
+                    for (int i = i0; i < i1; i++) {
+                        int rRow = result.getOffset() + i * result.getStride();
+                        activationFunction.apply(rData, rRow + j0, rData, rRow + j0, j1 - j0);
+                    }
+                }
+            }
+        }
+    }
+
+    //single precision version of multiplyTile
+    private static void multiplyTileFloat(Matrix a, Matrix b, Matrix result, int rowFrom, int rowTo, int colFrom, int colTo, ActivationFunction activationFunction) {
+        float[] aData = a.getFloatData();
+        float[] bData = b.getFloatData();
+        float[] rData = result.getFloatData();
+        VectorKernels vector = vectorKernels;
+        int common = a.getWidth();
+
+        clearTile(result, rowFrom, rowTo, colFrom, colTo);
+        for (int i0 = rowFrom; i0 < rowTo; i0 += BLOCK_SIZE) {
+            int i1 = Math.min(i0 + BLOCK_SIZE, rowTo);
+            for (int j0 = colFrom; j0 < colTo; j0 += BLOCK_SIZE) {
+                int j1 = Math.min(j0 + BLOCK_SIZE, colTo);
+                for (int p0 = 0; p0 < common; p0 += BLOCK_SIZE) {
+                    int p1 = Math.min(p0 + BLOCK_SIZE, common);
+                    for (int i = i0; i < i1; i++) {
+                        int aRow = a.getOffset() + i * a.getStride();
+                        int rRow = result.getOffset() + i * result.getStride();
+                        for (int p = p0; p < p1; p++) {
+                            float aValue = aData[aRow + p];
+                            int bRow = b.getOffset() + p * b.getStride();
+                            if (vector != null) {
+                                vector.axpy(aValue, bData, bRow + j0, rData, rRow + j0, j1 - j0);
+                                continue;
+                            }
+                            for (int j = j0; j < j1; j++) {
+                                rData[rRow + j] += aValue * bData[bRow + j];
+                            }
+                        }
+                    }
                 }
+                if (activationFunction != null) { //tile of result is complete
+                    for (int i = i0; i < i1; i++) {
+                        int rRow = result.getOffset() + i * result.getStride();
+                        activationFunction.apply(rData, rRow + j0, rData, rRow + j0, j1 - j0);
+                    }
+                }
+            }
+        }
+    }
 
-                result.set(k, i, sum);
+    /**
+     * Calculates tile from given range of result = transpose(a) * b. Row i of the result is built from column i of a,
+     * which is read row by row together with b.
+     */
+    static void multiplyTransposeATile(Matrix a, Matrix b, Matrix result, int rowFrom, int rowTo, int colFrom, int colTo) {
+        if (result.getPrecision() == Precision.FLOAT) {
+            multiplyTransposeATileFloat(a, b, result, rowFrom, rowTo, colFrom, colTo);
+            return;
+        }
+        double[] aData = a.getData();
+        double[] bData = b.getData();
+        double[] rData = result.getData();
+        VectorKernels vector = vectorKernels;
+        int common = a.getHeight();
 
+        clearTile(result, rowFrom, rowTo, colFrom, colTo);
+        for (int i0 = rowFrom; i0 < rowTo; i0 += BLOCK_SIZE) {
+            int i1 = Math.min(i0 + BLOCK_SIZE, rowTo);
+            for (int p0 = 0; p0 < common; p0 += BLOCK_SIZE) {
+                int p1 = Math.min(p0 + BLOCK_SIZE, common);
+                for (int j0 = colFrom; j0 < colTo; j0 += BLOCK_SIZE) {
+                    int j1 = Math.min(j0 + BLOCK_SIZE, colTo);
+                    for (int p = p0; p < p1; p++) {
+                        int aRow = a.getOffset() + p * a.getStride();
+                        int bRow = b.getOffset() + p * b.getStride();
+                        for (int i = i0; i < i1; i++) {
+                            double aValue = aData[aRow + i];
+                            int rRow = result.getOffset() + i * result.getStride();
+                            if (vector != null) {
+                                vector.axpy(aValue, bData, bRow + j0, rData, rRow + j0, j1 - j0);
+                                continue;
+                            }
+                            for (int j = j0; j < j1; j++) {
+                                rData[rRow + j] += aValue * bData[bRow + j];
+                            }
+                        }
+                    }
+                }
             }
         }
+    }
 
-        return result;
+    //single precision version of multiplyTransposeATile
+    private static void multiplyTransposeATileFloat(Matrix a, Matrix b, Matrix result, int rowFrom, int rowTo, int colFrom, int colTo) {
+        float[] aData = a.getFloatData();
+        float[] bData = b.getFloatData();
+        float[] rData = result.getFloatData();
+        VectorKernels vector = vectorKernels;
+        int common = a.getHeight();
+
+        clearTile(result, rowFrom, rowTo, colFrom, colTo);
+        for (int i0 = rowFrom; i0 < rowTo; i0 += BLOCK_SIZE) {
+            int i1 = Math.min(i0 + BLOCK_SIZE, rowTo);
+            for (int p0 = 0; p0 < common; p0 += BLOCK_SIZE) {
+                int p1 = Math.min(p0 + BLOCK_SIZE, common);
+                for (int j0 = colFrom; j0 < colTo; j0 += BLOCK_SIZE) {
+                    int j1 = Math.min(j0 + BLOCK_SIZE, colTo);
+                    for (int p = p0; p < p1; p++) {
+                        int aRow = a.getOffset() + p * a.getStride();
+                        int bRow = b.getOffset() + p * b.getStride();
+                        for (int i = i0; i < i1; i++) {
+                            float aValue = aData[aRow + i];
+                            int rRow = result.getOffset() + i * result.getStride();
+                            if (vector != null) {
+                                vector.axpy(aValue, bData, bRow + j0, rData, rRow + j0, j1 - j0);
+                                continue;
+                            }
+                            for (int j = j0; j < j1; j++) {
+                                rData[rRow + j] += aValue * bData[bRow + j];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates tile from given range of result = a * transpose(b). Every value of the result is a dot product of
+     * two continuous rows.
+     */
+    static void multiplyTransposeBTile(Matrix a, Matrix b, Matrix result, int rowFrom, int rowTo, int colFrom, int colTo) {
+        if (result.getPrecision() == Precision.FLOAT) {
+            multiplyTransposeBTileFloat(a, b, result, rowFrom, rowTo, colFrom, colTo);
+            return;
+        }
+        double[] aData = a.getData();
+        double[] bData = b.getData();
+        double[] rData = result.getData();
+        VectorKernels vector = vectorKernels;
+        int common = a.getWidth();
+
+        clearTile(result, rowFrom, rowTo, colFrom, colTo);
+        for (int i0 = rowFrom; i0 < rowTo; i0 += BLOCK_SIZE) {
+            int i1 = Math.min(i0 + BLOCK_SIZE, rowTo);
+            for (int j0 = colFrom; j0 < colTo; j0 += BLOCK_SIZE) {
+                int j1 = Math.min(j0 + BLOCK_SIZE, colTo);
+                for (int p0 = 0; p0 < common; p0 += BLOCK_SIZE) {
+                    int p1 = Math.min(p0 + BLOCK_SIZE, common);
+                    for (int i = i0; i < i1; i++) {
+                        int aRow = a.getOffset() + i * a.getStride();
+                        int rRow = result.getOffset() + i * result.getStride();
+                        for (int j = j0; j < j1; j++) {
+                            int bRow = b.getOffset() + j * b.getStride();
+                            if (vector != null) {
+                                rData[rRow + j] += vector.dot(aData, aRow + p0, bData, bRow + p0, p1 - p0);
+                                continue;
+                            }
+                            double sum = 0;
+                            for (int p = p0; p < p1; p++) {
+                                sum += aData[aRow + p] * bData[bRow + p];
+                            }
+                            rData[rRow + j] += sum;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    //single precision version of multiplyTransposeBTile
+    private static void multiplyTransposeBTileFloat(Matrix a, Matrix b, Matrix result, int rowFrom, int rowTo, int colFrom, int colTo) {
+        float[] aData = a.getFloatData();
+        float[] bData = b.getFloatData();
+        float[] rData = result.getFloatData();
+        VectorKernels vector = vectorKernels;
+        int common = a.getWidth();
+
+        clearTile(result, rowFrom, rowTo, colFrom, colTo);
+        for (int i0 = rowFrom; i0 < rowTo; i0 += BLOCK_SIZE) {
+            int i1 = Math.min(i0 + BLOCK_SIZE, rowTo);
+            for (int j0 = colFrom; j0 < colTo; j0 += BLOCK_SIZE) {
+                int j1 = Math.min(j0 + BLOCK_SIZE, colTo);
+                for (int p0 = 0; p0 < common; p0 += BLOCK_SIZE) {
+                    int p1 = Math.min(p0 + BLOCK_SIZE, common);
+                    for (int i = i0; i < i1; i++) {
+                        int aRow = a.getOffset() + i * a.getStride();
+                        int rRow = result.getOffset() + i * result.getStride();
+                        for (int j = j0; j < j1; j++) {
+                            int bRow = b.getOffset() + j * b.getStride();
+                            if (vector != null) {
+                                rData[rRow + j] += vector.dot(aData, aRow + p0, bData, bRow + p0, p1 - p0);
+                                continue;
+                            }
+                            float sum = 0;
+                            for (int p = p0; p < p1; p++) {
+                                sum += aData[aRow + p] * bData[bRow + p];
+                            }
+                            rData[rRow + j] += sum;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void clearTile(Matrix matrix, int rowFrom, int rowTo, int colFrom, int colTo) {
+        for (int y = rowFrom; y < rowTo; y++) {
+            int rowStart = matrix.getOffset() + y * matrix.getStride();
+            if (matrix.getPrecision() == Precision.FLOAT) {
+                Arrays.fill(matrix.getFloatData(), rowStart + colFrom, rowStart + colTo, 0);
+            } else {
+                Arrays.fill(matrix.getData(), rowStart + colFrom, rowStart + colTo, 0);
+            }
+        }
+    }
+
+    //computes whole result with given kernel, in parallel if multiplication is big enough
+    private static void compute(TileKernel kernel, Matrix a, Matrix b, Matrix result, int common) {
+        long operations = (long) result.getHeight() * result.getWidth() * common;
+        if (operations < parallelThreshold || pool.getParallelism() == 1) {
+            kernel.compute(a, b, result, 0, result.getHeight(), 0, result.getWidth());
+            return;
+        }
+        long leafOperations = Math.max(operations / (pool.getParallelism() * 4L), 1);
+        pool.invoke(new TileTask(kernel, a, b, result, common, leafOperations, 0, result.getHeight(), 0, result.getWidth()));
+    }
+
+    /**
+     * Kernel that computes part of result matrix (rows and columns from given ranges).
+     */
+    @FunctionalInterface
+    interface TileKernel {
+        void compute(Matrix a, Matrix b, Matrix result, int rowFrom, int rowTo, int colFrom, int colTo);
+    }
+
+    /**
+     * Task that splits result matrix in halves (along longer side, on tile boundaries) until tile is small enough to
+     * be computed directly.
+     */
+    private static class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TileKernel kernel;
+        private final Matrix a;
+        private final Matrix b;
+        private final Matrix result;
+        private final int common;
+        private final long leafOperations;
+        private final int rowFrom;
+        private final int rowTo;
+        private final int colFrom;
+        private final int colTo;
+
+        TileTask(TileKernel kernel, Matrix a, Matrix b, Matrix result, int common, long leafOperations, int rowFrom, int rowTo, int colFrom, int colTo) {
+            this.kernel = kernel;
+            this.a = a;
+            this.b = b;
+            this.result = result;
+            this.common = common;
+            this.leafOperations = leafOperations;
+            this.rowFrom = rowFrom;
+            this.rowTo = rowTo;
+            this.colFrom = colFrom;
+            this.colTo = colTo;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = rowTo - rowFrom;
+            int cols = colTo - colFrom;
+            long operations = (long) rows * cols * common;
+            boolean splitRows = rows >= cols;
+            int splitSize = splitRows ? rows : cols;
+            if (operations <= leafOperations || splitSize <= BLOCK_SIZE) {
+                kernel.compute(a, b, result, rowFrom, rowTo, colFrom, colTo);
+                return;
+            }
+            int half = (splitSize / 2 + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+            if (splitRows) {
+                invokeAll(new TileTask(kernel, a, b, result, common, leafOperations, rowFrom, rowFrom + half, colFrom, colTo),
+                        new TileTask(kernel, a, b, result, common, leafOperations, rowFrom + half, rowTo, colFrom, colTo));
+            } else {
+                invokeAll(new TileTask(kernel, a, b, result, common, leafOperations, rowFrom, rowTo, colFrom, colFrom + half),
+                        new TileTask(kernel, a, b, result, common, leafOperations, rowFrom, rowTo, colFrom + half, colTo));
+            }
+        }
+    }
+
+    /**
+     * Performs a check whether all given matrices have the same precision, and throws exception if they do not.
+     */
+    static void checkPrecision(Matrix... matrices) {
+        for (Matrix matrix : matrices) {
+            if (matrix.getPrecision() != matrices[0].getPrecision()) {
+                throw new IllegalArgumentException("Matrices differ in precision: " + matrices[0].getPrecision() + " and " + matrix.getPrecision());
+            }
+        }
+    }
+
+    private static void checkResult(Matrix result, int height, int width) {
+        if (result.getHeight() != height || result.getWidth() != width) {
+            throw new IllegalArgumentException("result should be of size [w: " + width + " x h: " + height + "], but is " + result);
+        }
+    }
+
+    private static void checkSizes(int sizeA, int sizeB, String message, Matrix a, Matrix b) {
+        if (sizeA != sizeB) {
+            throw new IllegalArgumentException(message + ". Sizes: a: " + a + ", b: " + b);
+        }
     }
 
     /**
      * Substracts two matrices and returns result.
      */
     public static Matrix subtract(Matrix a, Matrix b) {
-        Matrix result = new Matrix(a.getHeight(), a.getWidth());
+        return subtractInto(new Matrix(a.getHeight(), a.getWidth(), a.getPrecision()), a, b);
+    }
 
+    /**
+     * Substracts two matrices and stores it in result. Result might be one of the arguments.
+     */
+    public static Matrix subtractInto(Matrix result, Matrix a, Matrix b) {
+        a.checkEqual(b);
+        result.checkEqual(a);
+        checkPrecision(result, a, b);
+        if (result.getPrecision() == Precision.FLOAT) {
+            return subtractIntoFloat(result, a, b);
+        }
+        double[] aData = a.getData();
+        double[] bData = b.getData();
+        double[] rData = result.getData();
+        VectorKernels vector = vectorKernels;
         for (int y = 0; y < a.getHeight(); y++) {
-            for (int x = 0; x <  a.getWidth(); x++) {
-                result.set(x, y, a.get(x, y) - b.get(x, y));
+            int aRow = a.getOffset() + y * a.getStride();
+            int bRow = b.getOffset() + y * b.getStride();
+            int rRow = result.getOffset() + y * result.getStride();
+            if (vector != null) {
+                vector.subtract(aData, aRow, bData, bRow, rData, rRow, a.getWidth());
+                continue;
+            }
+            for (int x = 0; x < a.getWidth(); x++) {
+                rData[rRow + x] = aData[aRow + x] - bData[bRow + x];
             }
         }
+        return result;
+    }
 
+    //single precision version of subtractInto
+    private static Matrix subtractIntoFloat(Matrix result, Matrix a, Matrix b) {
+        float[] aData = a.getFloatData();
+        float[] bData = b.getFloatData();
+        float[] rData = result.getFloatData();
+        VectorKernels vector = vectorKernels;
+        for (int y = 0; y < a.getHeight(); y++) {
+            int aRow = a.getOffset() + y * a.getStride();
+            int bRow = b.getOffset() + y * b.getStride();
+            int rRow = result.getOffset() + y * result.getStride();
+            if (vector != null) {
+                vector.subtract(aData, aRow, bData, bRow, rData, rRow, a.getWidth());
+                continue;
+            }
+            for (int x = 0; x < a.getWidth(); x++) {
+                rData[rRow + x] = aData[aRow + x] - bData[bRow + x];
+            }
+        }
         return result;
     }
 
@@ -51,31 +557,116 @@ public class MatrixMath {
      * Multiplies values in matrix A by scalar values in matrix B.
      */
     public static Matrix scalarMultiply(Matrix a, Matrix b) {
-        a.checkEqual(b);
-
-        Matrix result = new Matrix(a.getHeight(), a.getWidth());
+        return scalarMultiplyInto(new Matrix(a.getHeight(), a.getWidth(), a.getPrecision()), a, b);
+    }
 
+    /**
+     * Multiplies values in matrix A by scalar values in matrix B and stores it in result. Result might be one of the
+     * arguments.
+     */
+    public static Matrix scalarMultiplyInto(Matrix result, Matrix a, Matrix b) {
+        a.checkEqual(b);
+        result.checkEqual(a);
+        checkPrecision(result, a, b);
+        if (result.getPrecision() == Precision.FLOAT) {
+            return scalarMultiplyIntoFloat(result, a, b);
+        }
+        double[] aData = a.getData();
+        double[] bData = b.getData();
+        double[] rData = result.getData();
+        VectorKernels vector = vectorKernels;
         for (int y = 0; y < a.getHeight(); y++) {
-            for (int x = 0; x <  a.getWidth(); x++) {
-                result.set(x, y, a.get(x, y) * b.get(x, y));
+            int aRow = a.getOffset() + y * a.getStride();
+            int bRow = b.getOffset() + y * b.getStride();
+            int rRow = result.getOffset() + y * result.getStride();
+            if (vector != null) {
+                vector.multiply(aData, aRow, bData, bRow, rData, rRow, a.getWidth());
+                continue;
+            }
+            for (int x = 0; x < a.getWidth(); x++) {
+                rData[rRow + x] = aData[aRow + x] * bData[bRow + x];
             }
         }
+        return result;
+    }
 
+    //single precision version of scalarMultiplyInto
+    private static Matrix scalarMultiplyIntoFloat(Matrix result, Matrix a, Matrix b) {
+        float[] aData = a.getFloatData();
+        float[] bData = b.getFloatData();
+        float[] rData = result.getFloatData();
+        VectorKernels vector = vectorKernels;
+        for (int y = 0; y < a.getHeight(); y++) {
+            int aRow = a.getOffset() + y * a.getStride();
+            int bRow = b.getOffset() + y * b.getStride();
+            int rRow = result.getOffset() + y * result.getStride();
+            if (vector != null) {
+                vector.multiply(aData, aRow, bData, bRow, rData, rRow, a.getWidth());
+                continue;
+            }
+            for (int x = 0; x < a.getWidth(); x++) {
+                rData[rRow + x] = aData[aRow + x] * bData[bRow + x];
+            }
+        }
         return result;
     }
 
+    /**
+     * Multiplies values in matrix A by scalar values in matrix B, modifying A.
+     */
+    public static Matrix scalarMultiplyInPlace(Matrix a, Matrix b) {
+        return scalarMultiplyInto(a, a, b);
+    }
+
     /**
      * Transposes given matrix.
      */
     public static Matrix transpose(Matrix a) {
-        Matrix result = new Matrix(a.getWidth(), a.getHeight());
+        return transposeInto(new Matrix(a.getWidth(), a.getHeight(), a.getPrecision()), a);
+    }
 
-        for (int y = 0; y < a.getHeight(); y++) {
-            for (int x = 0; x <  a.getWidth(); x++) {
-                result.set(y, x, a.get(x, y));
+    /**
+     * Transposes given matrix and stores it in result, that must not share storage with a.
+     */
+    public static Matrix transposeInto(Matrix result, Matrix a) {
+        checkResult(result, a.getWidth(), a.getHeight());
+        checkPrecision(result, a);
+        if (result.getPrecision() == Precision.FLOAT) {
+            return transposeIntoFloat(result, a);
+        }
+        double[] aData = a.getData();
+        double[] rData = result.getData();
+        for (int y0 = 0; y0 < a.getHeight(); y0 += BLOCK_SIZE) {
+            int y1 = Math.min(y0 + BLOCK_SIZE, a.getHeight());
+            for (int x0 = 0; x0 < a.getWidth(); x0 += BLOCK_SIZE) {
+                int x1 = Math.min(x0 + BLOCK_SIZE, a.getWidth());
+                for (int y = y0; y < y1; y++) {
+                    int aRow = a.getOffset() + y * a.getStride();
+                    for (int x = x0; x < x1; x++) {
+                        rData[result.getOffset() + x * result.getStride() + y] = aData[aRow + x];
+                    }
+                }
             }
         }
+        return result;
+    }
 
+    //single precision version of transposeInto
+    private static Matrix transposeIntoFloat(Matrix result, Matrix a) {
+        float[] aData = a.getFloatData();
+        float[] rData = result.getFloatData();
+        for (int y0 = 0; y0 < a.getHeight(); y0 += BLOCK_SIZE) {
+            int y1 = Math.min(y0 + BLOCK_SIZE, a.getHeight());
+            for (int x0 = 0; x0 < a.getWidth(); x0 += BLOCK_SIZE) {
+                int x1 = Math.min(x0 + BLOCK_SIZE, a.getWidth());
+                for (int y = y0; y < y1; y++) {
+                    int aRow = a.getOffset() + y * a.getStride();
+                    for (int x = x0; x < x1; x++) {
+                        rData[result.getOffset() + x * result.getStride() + y] = aData[aRow + x];
+                    }
+                }
+            }
+        }
         return result;
     }
 
@@ -83,17 +674,108 @@ public class MatrixMath {
      * Scales values in matrix by given scalar value.
      */
     public static Matrix scale(Matrix a, double value) {
-        Matrix result = new Matrix(a.getHeight(), a.getWidth());
+        return scaleInto(new Matrix(a.getHeight(), a.getWidth(), a.getPrecision()), a, value);
+    }
 
+    /**
+     * Scales values in matrix by given scalar value and stores it in result. Result might be a.
+     */
+    public static Matrix scaleInto(Matrix result, Matrix a, double value) {
+        result.checkEqual(a);
+        checkPrecision(result, a);
+        if (result.getPrecision() == Precision.FLOAT) {
+            return scaleIntoFloat(result, a, value);
+        }
+        double[] aData = a.getData();
+        double[] rData = result.getData();
+        VectorKernels vector = vectorKernels;
         for (int y = 0; y < a.getHeight(); y++) {
-            for (int x = 0; x <  a.getWidth(); x++) {
-                result.set(x, y, a.get(x, y) * value);
+            int aRow = a.getOffset() + y * a.getStride();
+            int rRow = result.getOffset() + y * result.getStride();
+            if (vector != null) {
+                vector.scale(aData, aRow, value, rData, rRow, a.getWidth());
+                continue;
+            }
+            for (int x = 0; x < a.getWidth(); x++) {
+                rData[rRow + x] = aData[aRow + x] * value;
             }
         }
+        return result;
+    }
 
+    //single precision version of scaleInto
+    private static Matrix scaleIntoFloat(Matrix result, Matrix a, double value) {
+        float floatValue = (float) value;
+        float[] aData = a.getFloatData();
+        float[] rData = result.getFloatData();
+        VectorKernels vector = vectorKernels;
+        for (int y = 0; y < a.getHeight(); y++) {
+            int aRow = a.getOffset() + y * a.getStride();
+            int rRow = result.getOffset() + y * result.getStride();
+            if (vector != null) {
+                vector.scale(aData, aRow, floatValue, rData, rRow, a.getWidth());
+                continue;
+            }
+            for (int x = 0; x < a.getWidth(); x++) {
+                rData[rRow + x] = aData[aRow + x] * floatValue;
+            }
+        }
         return result;
     }
 
+    /**
+     * Scales values in matrix by given scalar value, modifying it.
+     */
+    public static Matrix scaleInPlace(Matrix a, double value) {
+        return scaleInto(a, a, value);
+    }
+
+    /**
+     * Adds values of matrix B scaled by given value to matrix A (a += b * value), modifying A.
+     */
+    public static Matrix addScaled(Matrix a, Matrix b, double value) {
+        a.checkEqual(b);
+        checkPrecision(a, b);
+        if (a.getPrecision() == Precision.FLOAT) {
+            return addScaledFloat(a, b, value);
+        }
+        double[] aData = a.getData();
+        double[] bData = b.getData();
+        VectorKernels vector = vectorKernels;
+        for (int y = 0; y < a.getHeight(); y++) {
+            int aRow = a.getOffset() + y * a.getStride();
+            int bRow = b.getOffset() + y * b.getStride();
+            if (vector != null) {
+                vector.axpy(value, bData, bRow, aData, aRow, a.getWidth());
+                continue;
+            }
+            for (int x = 0; x < a.getWidth(); x++) {
+                aData[aRow + x] += bData[bRow + x] * value;
+            }
+        }
+        return a;
+    }
+
+    //single precision version of addScaled
+    private static Matrix addScaledFloat(Matrix a, Matrix b, double value) {
+        float floatValue = (float) value;
+        float[] aData = a.getFloatData();
+        float[] bData = b.getFloatData();
+        VectorKernels vector = vectorKernels;
+        for (int y = 0; y < a.getHeight(); y++) {
+            int aRow = a.getOffset() + y * a.getStride();
+            int bRow = b.getOffset() + y * b.getStride();
+            if (vector != null) {
+                vector.axpy(floatValue, bData, bRow, aData, aRow, a.getWidth());
+                continue;
+            }
+            for (int x = 0; x < a.getWidth(); x++) {
+                aData[aRow + x] += bData[bRow + x] * floatValue;
+            }
+        }
+        return a;
+    }
+
     /**
      * Calculates deviation for given one dimensional matrix.
      */
@@ -104,4 +786,27 @@ public class MatrixMath {
         }
         return Math.sqrt(dev/maxDeviation);
     }
+
+    /**
+     * Calculates sum of deviations (as in deviation method) of every row of result matrix from expected matrix.
+     */
+    public static double deviationSum(Matrix expected, Matrix result, double maxDeviation) {
+        expected.checkEqual(result);
+        checkPrecision(expected, result);
+        boolean isFloat = result.getPrecision() == Precision.FLOAT;
+        double sum = 0;
+        for (int y = 0; y < result.getHeight(); y++) {
+            int eRow = expected.getOffset() + y * expected.getStride();
+            int rRow = result.getOffset() + y * result.getStride();
+            double dev = 0;
+            for (int x = 0; x < result.getWidth(); x++) {
+                double diff = isFloat ?
+                        expected.getFloatData()[eRow + x] - result.getFloatData()[rRow + x] :
+                        expected.getData()[eRow + x] - result.getData()[rRow + x];
+                dev += diff * diff;
+            }
+            sum += Math.sqrt(dev/maxDeviation);
+        }
+        return sum;
+    }
 }
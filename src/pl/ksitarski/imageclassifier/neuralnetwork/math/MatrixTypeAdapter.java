@@ -0,0 +1,131 @@
+package pl.ksitarski.imageclassifier.neuralnetwork.math;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes matrices in NNF files. Matrices are written contiguous (views are copied) with the same fields as
+ * the matrix itself: height, width, offset, stride and data or floatData. Matrices from files saved before flat
+ * storage was introduced, that have values in array of rows named matrix, are converted to flat storage.
+ */
+class MatrixTypeAdapter extends TypeAdapter<Matrix> {
+
+    @Override
+    public void write(JsonWriter out, Matrix matrix) throws IOException {
+        if (matrix == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("height").value(matrix.getHeight());
+        out.name("width").value(matrix.getWidth());
+        out.name("offset").value(0);
+        out.name("stride").value(matrix.getWidth());
+        boolean isFloat = matrix.getPrecision() == Precision.FLOAT;
+        out.name(isFloat ? "floatData" : "data").beginArray();
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                if (isFloat) {
+                    out.value((Number) (float) matrix.get(x, y));
+                } else {
+                    out.value(matrix.get(x, y));
+                }
+            }
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    @Override
+    public Matrix read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int height = 0;
+        int width = 0;
+        int offset = 0;
+        int stride = -1;
+        double[] data = null;
+        float[] floatData = null;
+        double[][] rows = null; //legacy storage
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "height":
+                    height = in.nextInt();
+                    break;
+                case "width":
+                    width = in.nextInt();
+                    break;
+                case "offset":
+                    offset = in.nextInt();
+                    break;
+                case "stride":
+                    stride = in.nextInt();
+                    break;
+                case "data":
+                    data = readDoubles(in);
+                    break;
+                case "floatData":
+                    double[] values = readDoubles(in);
+                    floatData = new float[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        floatData[i] = (float) values[i];
+                    }
+                    break;
+                case "matrix":
+                    List<double[]> rowList = new ArrayList<>();
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        rowList.add(readDoubles(in));
+                    }
+                    in.endArray();
+                    rows = rowList.toArray(new double[0][]);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (rows != null) {
+            data = new double[height * width];
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(rows[y], 0, data, y * width, width);
+            }
+            offset = 0;
+            stride = width;
+        }
+        if (data == null && floatData == null) {
+            throw new IOException("Matrix " + height + "x" + width + " has no values");
+        }
+        return new Matrix(data, floatData, offset, height, width, stride < 0 ? width : stride);
+    }
+
+    private static double[] readDoubles(JsonReader in) throws IOException {
+        List<Double> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            values.add(in.nextDouble());
+        }
+        in.endArray();
+        double[] result = new double[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+}
@@ -1,28 +1,82 @@
 package pl.ksitarski.imageclassifier.neuralnetwork.math;
 
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Contains neural network related math functions.
  */
 public class NLMath {
 
-    private static Random random = new Random();
-
     /**
-     * Returns random double value from given range.
+     * Returns random double value from given range, using random generator of current thread.
      */
     public static double getDoubleFromRange(double min, double max) {
+        return (max - min) * ThreadLocalRandom.current().nextDouble() + min;
+    }
+
+    /**
+     * Returns random double value from given range, using given random generator.
+     */
+    public static double getDoubleFromRange(SplittableRandom random, double min, double max) {
         return (max - min) * random.nextDouble() + min;
     }
 
+    //sigmoid lookup table covers [-TABLE_RANGE, TABLE_RANGE], values are linearly interpolated between entries
+    private static final int TABLE_RANGE = 16;
+    private static final int TABLE_STEPS_PER_UNIT = 128;
+    private static final double[] sigmoidTable = createSigmoidTable();
+
+    private static volatile boolean tableSigmoid = false;
+
+    /**
+     * Enables or disables lookup table approximation of activation function. Approximation is linear interpolation
+     * between values tabulated every 1/128 on [-16, 16] and constant outside of it; its maximum absolute error is
+     * below 1e-6 (linear interpolation error is bounded by 0.0962 / 8 / 128^2 = 7.4e-7, clamping error by
+     * exp(-16) = 1.2e-7). It does not call Math.exp, and is not vectorized.
+     */
+    public static void setTableSigmoid(boolean enabled) {
+        tableSigmoid = enabled;
+    }
+
+    public static boolean isTableSigmoid() {
+        return tableSigmoid;
+    }
+
     /**
      * Calculates value for activation function.
      */
     public static double activationFunction(double v) {
+        if (tableSigmoid) {
+            return tableActivationFunction(v);
+        }
         return 1.0 / (1.0 + Math.exp(-v));
     }
 
+    /**
+     * Calculates approximated value for activation function using lookup table.
+     */
+    public static double tableActivationFunction(double v) {
+        if (v <= -TABLE_RANGE) {
+            return sigmoidTable[0];
+        }
+        if (v >= TABLE_RANGE) {
+            return sigmoidTable[sigmoidTable.length - 1];
+        }
+        double position = (v + TABLE_RANGE) * TABLE_STEPS_PER_UNIT;
+        int index = (int) position;
+        double low = sigmoidTable[index];
+        return low + (sigmoidTable[index + 1] - low) * (position - index);
+    }
+
+    private static double[] createSigmoidTable() {
+        double[] table = new double[2 * TABLE_RANGE * TABLE_STEPS_PER_UNIT + 2]; //one additional entry for interpolation at the end
+        for (int i = 0; i < table.length; i++) {
+            table[i] = 1.0 / (1.0 + Math.exp(-((double) i / TABLE_STEPS_PER_UNIT - TABLE_RANGE)));
+        }
+        return table;
+    }
+
     /**
      * Calculates value for derivative of activation function.
      */
@@ -34,29 +88,199 @@ public class NLMath {
      * Applies activation function to entire matrix.
      */
     public static Matrix applyFunction(Matrix matrix) {
-        Matrix result = new Matrix(matrix.getHeight(), matrix.getWidth());
+        return applyFunctionInto(new Matrix(matrix.getHeight(), matrix.getWidth(), matrix.getPrecision()), matrix);
+    }
 
+    /**
+     * Applies activation function to entire matrix and stores it in result. Result might be the same matrix.
+     */
+    public static Matrix applyFunctionInto(Matrix result, Matrix matrix) {
+        return applyFunctionInto(result, matrix, ActivationFunction.SIGMOID);
+    }
+
+    /**
+     * Applies given activation function to entire matrix and stores it in result. Result might be the same matrix.
+     */
+    public static Matrix applyFunctionInto(Matrix result, Matrix matrix, ActivationFunction activationFunction) {
+        result.checkEqual(matrix);
+        MatrixMath.checkPrecision(result, matrix);
+        if (result.getPrecision() == Precision.FLOAT) {
+            return applyFunctionIntoFloat(result, matrix, activationFunction);
+        }
+        double[] data = matrix.getData();
+        double[] resultData = result.getData();
         for (int y = 0; y < matrix.getHeight(); y++) {
-            for (int x = 0; x < matrix.getWidth(); x++) {
-                result.set(x, y, activationFunction(matrix.get(x, y)));
-            }
+            int row = matrix.getOffset() + y * matrix.getStride();
+            int resultRow = result.getOffset() + y * result.getStride();
+            activationFunction.apply(data, row, resultData, resultRow, matrix.getWidth());
         }
+        return result;
+    }
 
+    //single precision version of applyFunctionInto
+    private static Matrix applyFunctionIntoFloat(Matrix result, Matrix matrix, ActivationFunction activationFunction) {
+        float[] data = matrix.getFloatData();
+        float[] resultData = result.getFloatData();
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            int row = matrix.getOffset() + y * matrix.getStride();
+            int resultRow = result.getOffset() + y * result.getStride();
+            activationFunction.apply(data, row, resultData, resultRow, matrix.getWidth());
+        }
         return result;
     }
 
+    /**
+     * Applies activation function to entire matrix, modifying it.
+     */
+    public static Matrix applyFunctionInPlace(Matrix matrix) {
+        return applyFunctionInto(matrix, matrix);
+    }
+
+    /**
+     * Multiplies input by weights and applies activation function to the result, storing it in result (that must not
+     * share storage with input or weights). Activation function is applied while computed tile is still in cache.
+     */
+    public static Matrix multiplyAndApplyFunctionInto(Matrix result, Matrix input, Matrix weights) {
+        return multiplyAndApplyFunctionInto(result, input, weights, ActivationFunction.SIGMOID);
+    }
+
+    /**
+     * Multiplies input by weights and applies given activation function to the result, storing it in result (that
+     * must not share storage with input or weights).
+     */
+    public static Matrix multiplyAndApplyFunctionInto(Matrix result, Matrix input, Matrix weights, ActivationFunction activationFunction) {
+        return MatrixMath.multiplyActivateInto(result, input, weights, activationFunction);
+    }
+
+    /**
+     * Multiplies input by weights and applies activation function to the result in one pass.
+     */
+    public static Matrix multiplyAndApplyFunction(Matrix input, Matrix weights) {
+        return multiplyAndApplyFunction(input, weights, ActivationFunction.SIGMOID);
+    }
+
+    /**
+     * Multiplies input by weights and applies given activation function to the result in one pass.
+     */
+    public static Matrix multiplyAndApplyFunction(Matrix input, Matrix weights, ActivationFunction activationFunction) {
+        return multiplyAndApplyFunctionInto(new Matrix(input.getHeight(), weights.getWidth(), input.getPrecision()), input, weights, activationFunction);
+    }
+
+    /**
+     * Multiplies values of matrix by derivative of activation function calculated for given activations
+     * (matrix *= derivative(activations)) in one pass, modifying matrix.
+     */
+    public static Matrix multiplyByFunctionDerivativeInPlace(Matrix matrix, Matrix activations) {
+        return multiplyByFunctionDerivativeInPlace(matrix, activations, ActivationFunction.SIGMOID);
+    }
+
+    /**
+     * Multiplies values of matrix by derivative of given activation function calculated for given activations
+     * (matrix *= derivative(activations)) in one pass, modifying matrix.
+     */
+    public static Matrix multiplyByFunctionDerivativeInPlace(Matrix matrix, Matrix activations, ActivationFunction activationFunction) {
+        matrix.checkEqual(activations);
+        MatrixMath.checkPrecision(matrix, activations);
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            int row = matrix.getOffset() + y * matrix.getStride();
+            int activationsRow = activations.getOffset() + y * activations.getStride();
+            if (matrix.getPrecision() == Precision.FLOAT) {
+                activationFunction.multiplyByDerivative(matrix.getFloatData(), row, activations.getFloatData(), activationsRow, matrix.getWidth());
+            } else {
+                activationFunction.multiplyByDerivative(matrix.getData(), row, activations.getData(), activationsRow, matrix.getWidth());
+            }
+        }
+        return matrix;
+    }
+
     /**
      * Applies derivative of activation function to entire matrix.
      */
     public static Matrix applyFunctionDerivative(Matrix matrix) {
-        Matrix result = new Matrix(matrix.getHeight(), matrix.getWidth());
+        return applyFunctionDerivativeInto(new Matrix(matrix.getHeight(), matrix.getWidth(), matrix.getPrecision()), matrix);
+    }
 
+    /**
+     * Applies derivative of activation function to entire matrix and stores it in result. Result might be the same
+     * matrix.
+     */
+    public static Matrix applyFunctionDerivativeInto(Matrix result, Matrix matrix) {
+        result.checkEqual(matrix);
+        MatrixMath.checkPrecision(result, matrix);
+        if (result.getPrecision() == Precision.FLOAT) {
+            return applyFunctionDerivativeIntoFloat(result, matrix);
+        }
+        double[] data = matrix.getData();
+        double[] resultData = result.getData();
+        VectorKernels vector = MatrixMath.getVectorKernels();
         for (int y = 0; y < matrix.getHeight(); y++) {
+            int row = matrix.getOffset() + y * matrix.getStride();
+            int resultRow = result.getOffset() + y * result.getStride();
+            if (vector != null) {
+                vector.sigmoidDerivative(data, row, resultData, resultRow, matrix.getWidth());
+                continue;
+            }
             for (int x = 0; x < matrix.getWidth(); x++) {
-                result.set(x, y, activationFunctionDerivative(matrix.get(x, y)));
+                resultData[resultRow + x] = activationFunctionDerivative(data[row + x]);
             }
         }
+        return result;
+    }
 
+    //single precision version of applyFunctionDerivativeInto
+    private static Matrix applyFunctionDerivativeIntoFloat(Matrix result, Matrix matrix) {
+        float[] data = matrix.getFloatData();
+        float[] resultData = result.getFloatData();
+        VectorKernels vector = MatrixMath.getVectorKernels();
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            int row = matrix.getOffset() + y * matrix.getStride();
+            int resultRow = result.getOffset() + y * result.getStride();
+            if (vector != null) {
+                vector.sigmoidDerivative(data, row, resultData, resultRow, matrix.getWidth());
+                continue;
+            }
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                resultData[resultRow + x] = (float) activationFunctionDerivative(data[row + x]);
+            }
+        }
         return result;
     }
+
+    /**
+     * Applies sigmoid to continuous range of values, using lookup table, SIMD or scalar code.
+     */
+    static void applySigmoid(double[] data, int offset, double[] resultData, int resultOffset, int length) {
+        if (tableSigmoid) {
+            for (int x = 0; x < length; x++) {
+                resultData[resultOffset + x] = tableActivationFunction(data[offset + x]);
+            }
+            return;
+        }
+        VectorKernels vector = MatrixMath.getVectorKernels();
+        if (vector != null) {
+            vector.sigmoid(data, offset, resultData, resultOffset, length);
+            return;
+        }
+        for (int x = 0; x < length; x++) {
+            resultData[resultOffset + x] = (1.0 / (1.0 + Math.exp(-data[offset + x])));
+        }
+    }
+
+    //single precision version of applySigmoid
+    static void applySigmoid(float[] data, int offset, float[] resultData, int resultOffset, int length) {
+        if (tableSigmoid) {
+            for (int x = 0; x < length; x++) {
+                resultData[resultOffset + x] = (float) tableActivationFunction(data[offset + x]);
+            }
+            return;
+        }
+        VectorKernels vector = MatrixMath.getVectorKernels();
+        if (vector != null) {
+            vector.sigmoid(data, offset, resultData, resultOffset, length);
+            return;
+        }
+        for (int x = 0; x < length; x++) {
+            resultData[resultOffset + x] = (float) (1.0 / (1.0 + Math.exp(-data[offset + x])));
+        }
+    }
 }
@@ -0,0 +1,126 @@
+package pl.ksitarski.imageclassifier.neuralnetwork.math;
+
+/**
+ * Methods of updating weights with adjustment calculated by backpropagation (direction that lowers the error, scaled
+ * later by learning rate). Optimizers other than plain gradient descent keep their buffers in OptimizerState of layer.
+ */
+public enum Optimizer {
+    /**
+     * Plain gradient descent: weights += learningRate * adjustment.
+     */
+    GRADIENT_DESCENT {
+        @Override
+        public void update(Matrix weights, Matrix adjustment, OptimizerState state, double learningRate) {
+            MatrixMath.addScaled(weights, adjustment, learningRate);
+        }
+    },
+    /**
+     * Gradient descent with momentum 0.9: velocity = 0.9 * velocity + adjustment, weights += learningRate * velocity.
+     */
+    MOMENTUM {
+        @Override
+        public void update(Matrix weights, Matrix adjustment, OptimizerState state, double learningRate) {
+            Matrix velocity = state.getFirst(weights);
+            MatrixMath.scaleInPlace(velocity, MOMENTUM_DECAY);
+            MatrixMath.addScaled(velocity, adjustment, 1);
+            MatrixMath.addScaled(weights, velocity, learningRate);
+        }
+    },
+    /**
+     * Adjustment divided by root of running average of squared adjustments (decay 0.9), so that every weight has its
+     * own step size.
+     */
+    RMSPROP {
+        @Override
+        public void update(Matrix weights, Matrix adjustment, OptimizerState state, double learningRate) {
+            state.nextStep();
+            Matrix squares = state.getSecond(weights);
+            adaptiveUpdate(weights, adjustment, null, squares, 0, RMSPROP_DECAY, learningRate);
+        }
+    },
+    /**
+     * Adam: bias corrected running averages of adjustments (decay 0.9) and of their squares (decay 0.999).
+     */
+    ADAM {
+        @Override
+        public void update(Matrix weights, Matrix adjustment, OptimizerState state, double learningRate) {
+            int step = state.nextStep();
+            Matrix moments = state.getFirst(weights);
+            Matrix squares = state.getSecond(weights);
+            double correctedRate = learningRate * Math.sqrt(1 - Math.pow(ADAM_SECOND_DECAY, step)) / (1 - Math.pow(ADAM_FIRST_DECAY, step));
+            adaptiveUpdate(weights, adjustment, moments, squares, ADAM_FIRST_DECAY, ADAM_SECOND_DECAY, correctedRate);
+        }
+    };
+
+    private static final double MOMENTUM_DECAY = 0.9;
+    private static final double RMSPROP_DECAY = 0.9;
+    private static final double ADAM_FIRST_DECAY = 0.9;
+    private static final double ADAM_SECOND_DECAY = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    /**
+     * Updates weights with given adjustment.
+     * @param weights weights of layer
+     * @param adjustment adjustment calculated by backpropagation
+     * @param state state of optimizer for this layer
+     * @param learningRate learning rate
+     */
+    public abstract void update(Matrix weights, Matrix adjustment, OptimizerState state, double learningRate);
+
+    //updates averages in single pass and adds rate * moment / (sqrt(square) + epsilon) to weights. Without moments
+    //buffer, adjustment is used directly
+    private static void adaptiveUpdate(Matrix weights, Matrix adjustment, Matrix moments, Matrix squares,
+                                       double firstDecay, double secondDecay, double rate) {
+        weights.checkEqual(adjustment);
+        MatrixMath.checkPrecision(weights, adjustment, squares);
+        if (weights.getPrecision() == Precision.FLOAT) {
+            adaptiveUpdateFloat(weights, adjustment, moments, squares, (float) firstDecay, (float) secondDecay, (float) rate);
+            return;
+        }
+        double[] wData = weights.getData();
+        double[] aData = adjustment.getData();
+        double[] mData = moments == null ? null : moments.getData();
+        double[] sData = squares.getData();
+        for (int y = 0; y < weights.getHeight(); y++) {
+            int wRow = weights.getOffset() + y * weights.getStride();
+            int aRow = adjustment.getOffset() + y * adjustment.getStride();
+            int sRow = y * squares.getStride(); //state buffers are always contiguous
+            for (int x = 0; x < weights.getWidth(); x++) {
+                double a = aData[aRow + x];
+                double s = secondDecay * sData[sRow + x] + (1 - secondDecay) * a * a;
+                sData[sRow + x] = s;
+                double m = a;
+                if (mData != null) {
+                    m = firstDecay * mData[sRow + x] + (1 - firstDecay) * a;
+                    mData[sRow + x] = m;
+                }
+                wData[wRow + x] += rate * m / (Math.sqrt(s) + EPSILON);
+            }
+        }
+    }
+
+    //single precision version of adaptiveUpdate
+    private static void adaptiveUpdateFloat(Matrix weights, Matrix adjustment, Matrix moments, Matrix squares,
+                                            float firstDecay, float secondDecay, float rate) {
+        float[] wData = weights.getFloatData();
+        float[] aData = adjustment.getFloatData();
+        float[] mData = moments == null ? null : moments.getFloatData();
+        float[] sData = squares.getFloatData();
+        for (int y = 0; y < weights.getHeight(); y++) {
+            int wRow = weights.getOffset() + y * weights.getStride();
+            int aRow = adjustment.getOffset() + y * adjustment.getStride();
+            int sRow = y * squares.getStride(); //state buffers are always contiguous
+            for (int x = 0; x < weights.getWidth(); x++) {
+                float a = aData[aRow + x];
+                float s = secondDecay * sData[sRow + x] + (1 - secondDecay) * a * a;
+                sData[sRow + x] = s;
+                float m = a;
+                if (mData != null) {
+                    m = firstDecay * mData[sRow + x] + (1 - firstDecay) * a;
+                    mData[sRow + x] = m;
+                }
+                wData[wRow + x] += rate * m / ((float) Math.sqrt(s) + (float) EPSILON);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package pl.ksitarski.imageclassifier.neuralnetwork.math;
+
+/**
+ * Per-layer state of optimizer: velocity or moment estimates (depending on optimizer) and number of performed steps.
+ * Saved together with neural network, so that training can be continued with the same state.
+ */
+public class OptimizerState {
+    private Matrix first; //velocity (momentum) or first moment (Adam)
+    private Matrix second; //running average of squared adjustments (RMSProp, Adam)
+    private int step;
+
+    /**
+     * Creates empty state, buffers are allocated on first use.
+     */
+    public OptimizerState() {
+    }
+
+    /**
+     * Deep copy constructor.
+     * @param other optimizer state to clone
+     */
+    public OptimizerState(OptimizerState other) {
+        this.first = other.first == null ? null : new Matrix(other.first);
+        this.second = other.second == null ? null : new Matrix(other.second);
+        this.step = other.step;
+    }
+
+    /**
+     * Copies other state into this one, reusing buffers if they have matching sizes.
+     */
+    public OptimizerState copyFrom(OptimizerState other) {
+        first = copyOf(first, other.first);
+        second = copyOf(second, other.second);
+        step = other.step;
+        return this;
+    }
+
+    public int getStep() {
+        return step;
+    }
+
+    int nextStep() {
+        return ++step;
+    }
+
+    Matrix getFirst(Matrix weights) {
+        if (first == null || !fits(first, weights)) {
+            first = new Matrix(weights.getHeight(), weights.getWidth(), weights.getPrecision());
+        }
+        return first;
+    }
+
+    Matrix getSecond(Matrix weights) {
+        if (second == null || !fits(second, weights)) {
+            second = new Matrix(weights.getHeight(), weights.getWidth(), weights.getPrecision());
+        }
+        return second;
+    }
+
+    private static boolean fits(Matrix buffer, Matrix weights) {
+        return buffer.getHeight() == weights.getHeight() && buffer.getWidth() == weights.getWidth()
+                && buffer.getPrecision() == weights.getPrecision();
+    }
+
+    private static Matrix copyOf(Matrix buffer, Matrix source) {
+        if (source == null) {
+            return null;
+        }
+        if (buffer == null || !fits(buffer, source)) {
+            return new Matrix(source);
+        }
+        return buffer.copyFrom(source);
+    }
+}
@@ -0,0 +1,15 @@
+package pl.ksitarski.imageclassifier.neuralnetwork.math;
+
+/**
+ * Precision in which values of matrix are stored and computed.
+ */
+public enum Precision {
+    /**
+     * 64 bit floating point values.
+     */
+    DOUBLE,
+    /**
+     * 32 bit floating point values. Halves memory usage and bandwidth, which is enough for sigmoid networks.
+     */
+    FLOAT
+}
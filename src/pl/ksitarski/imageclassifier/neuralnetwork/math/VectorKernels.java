@@ -0,0 +1,77 @@
+package pl.ksitarski.imageclassifier.neuralnetwork.math;
+
+/**
+ * Inner loops of matrix math that can be computed with SIMD instructions. Every operation works on a continuous range
+ * of given length, starting at given offsets.
+ */
+interface VectorKernels {
+    /**
+     * y += a * x
+     */
+    void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    /**
+     * y += a * x
+     */
+    void axpy(float a, float[] x, int xOffset, float[] y, int yOffset, int length);
+
+    /**
+     * Returns sum of x * y.
+     */
+    double dot(double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    /**
+     * Returns sum of x * y.
+     */
+    float dot(float[] x, int xOffset, float[] y, int yOffset, int length);
+
+    /**
+     * result = a - b
+     */
+    void subtract(double[] a, int aOffset, double[] b, int bOffset, double[] result, int resultOffset, int length);
+
+    /**
+     * result = a - b
+     */
+    void subtract(float[] a, int aOffset, float[] b, int bOffset, float[] result, int resultOffset, int length);
+
+    /**
+     * result = a * b
+     */
+    void multiply(double[] a, int aOffset, double[] b, int bOffset, double[] result, int resultOffset, int length);
+
+    /**
+     * result = a * b
+     */
+    void multiply(float[] a, int aOffset, float[] b, int bOffset, float[] result, int resultOffset, int length);
+
+    /**
+     * result = a * value
+     */
+    void scale(double[] a, int aOffset, double value, double[] result, int resultOffset, int length);
+
+    /**
+     * result = a * value
+     */
+    void scale(float[] a, int aOffset, float value, float[] result, int resultOffset, int length);
+
+    /**
+     * result = 1 / (1 + exp(-a))
+     */
+    void sigmoid(double[] a, int aOffset, double[] result, int resultOffset, int length);
+
+    /**
+     * result = 1 / (1 + exp(-a))
+     */
+    void sigmoid(float[] a, int aOffset, float[] result, int resultOffset, int length);
+
+    /**
+     * result = a * (1 - a)
+     */
+    void sigmoidDerivative(double[] a, int aOffset, double[] result, int resultOffset, int length);
+
+    /**
+     * result = a * (1 - a)
+     */
+    void sigmoidDerivative(float[] a, int aOffset, float[] result, int resultOffset, int length);
+}
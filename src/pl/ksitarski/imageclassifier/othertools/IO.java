@@ -1,9 +1,12 @@
 package pl.ksitarski.imageclassifier.othertools;
 
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import pl.ksitarski.imageclassifier.imageclassifier.Classifier;
+import pl.ksitarski.imageclassifier.imageclassifier.CompiledClassifier;
 import pl.ksitarski.imageclassifier.neuralnetwork.LoggerSettings;
 
 import javax.imageio.ImageIO;
@@ -14,7 +17,9 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 /**
@@ -28,6 +33,7 @@ public class IO {
 
     //static variable so that the file opener does not have restarted location every time it is openend
     private static File lastFileDirectory = null;
+    private static final AtomicLong temporaryFileCounter = new AtomicLong();
 
     /**
      * Tries to load image from given file.
@@ -136,6 +142,13 @@ public class IO {
             return Optional.empty();
         }
 
+        return loadNnf(file);
+    }
+
+    /**
+     * Loads NNF (neural network state file) from given file.
+     */
+    public static Optional<Classifier> loadNnf(File file) {
         String s = fromFile(file);
         try {
             return Optional.of(new GsonBuilder().create().fromJson(s, Classifier.class));
@@ -145,6 +158,68 @@ public class IO {
         return Optional.empty();
     }
 
+    /**
+     * Saves NNF (neural network state file) to given file. File is first written under temporary name and then moved,
+     * so that given file is never left partially written.
+     */
+    public static void saveNnf(Classifier classifier, File file) throws IOException {
+        toFileAtomically(new GsonBuilder().setPrettyPrinting().create().toJson(classifier), file);
+    }
+
+    /**
+     * Loads compiled classifier (inference only model, see Classifier.compile) from given file. Returns empty optional
+     * if file is not a compiled classifier (for example if it is NNF).
+     */
+    public static Optional<CompiledClassifier> loadModel(File file) {
+        String s = fromFile(file);
+        try {
+            Gson gson = new GsonBuilder().create();
+            JsonObject json = gson.fromJson(s, JsonObject.class);
+            if (json == null || !json.has("network")) {
+                return Optional.empty();
+            }
+            return Optional.of(gson.fromJson(json, CompiledClassifier.class));
+        } catch (Exception e) {
+            LoggerSettings.getLogger().log(e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Saves compiled classifier to given file, the same way as saveNnf.
+     */
+    public static void saveModel(CompiledClassifier compiledClassifier, File file) throws IOException {
+        toFileAtomically(new GsonBuilder().create().toJson(compiledClassifier), file);
+    }
+
+    /**
+     * Saves given object as JSON to given file, the same way as saveNnf.
+     */
+    public static void saveJson(Object object, File file) throws IOException {
+        toFileAtomically(new GsonBuilder().create().toJson(object), file);
+    }
+
+    /**
+     * Loads object of given type from JSON file.
+     */
+    public static <T> Optional<T> loadJson(File file, Class<T> type) {
+        String s = fromFile(file);
+        try {
+            return Optional.ofNullable(new GsonBuilder().create().fromJson(s, type));
+        } catch (Exception e) {
+            LoggerSettings.getLogger().log(e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    //writes under temporary name and moves it to given file, temporary names are unique so concurrent writes of the same
+    //file do not clash
+    private static void toFileAtomically(String s, File file) throws IOException {
+        File temporaryFile = new File(file.getPath() + "." + temporaryFileCounter.incrementAndGet() + ".tmp");
+        Files.write(temporaryFile.toPath(), s.getBytes(StandardCharsets.UTF_8));
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
     /**
      * Saves NNF (neural network state file) using GUI.
      */
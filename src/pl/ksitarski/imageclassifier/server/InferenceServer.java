@@ -0,0 +1,207 @@
+package pl.ksitarski.imageclassifier.server;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import pl.ksitarski.imageclassifier.imageclassifier.CategorizationResult;
+import pl.ksitarski.imageclassifier.imageclassifier.Categorizer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Headless HTTP server that categorizes uploaded images. Images are decoded and scaled concurrently by threads of the
+ * server and then categorized in batches by micro batcher.
+ * <p>
+ * POST /categorize with image as body responds with most likely category, its score and scores of all categories.
+ * Bodies bigger than 32 MB are rejected.
+ * GET /stats responds with number of requests, throughput, p50 and p99 latency and average batch size, GET
+ * /stats?reset also clears them.
+ * </p>
+ */
+public class InferenceServer {
+    private static final long RESULT_TIMEOUT_MILLIS = 30_000;
+    private static final int MAX_BODY_BYTES = 32 * 1024 * 1024;
+
+    private final Categorizer categorizer;
+    private final MicroBatcher microBatcher;
+    private final LatencyStats latencyStats = new LatencyStats(100_000);
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+    private final Gson gson = new Gson();
+
+    /**
+     * Constructor, server is not started.
+     * @param categorizer categorizer used for requests
+     * @param port port to listen on
+     * @param threads number of threads that handle requests (and decode images)
+     * @param maxBatchSize biggest number of images categorized at once
+     * @param maxWaitMillis longest time that image waits for other images to be batched with
+     */
+    public InferenceServer(Categorizer categorizer, int port, int threads, int maxBatchSize, long maxWaitMillis) throws IOException {
+        this.categorizer = categorizer;
+        this.microBatcher = new MicroBatcher(categorizer, maxBatchSize, maxWaitMillis);
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "inference-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/categorize", this::categorize);
+        httpServer.createContext("/stats", this::stats);
+    }
+
+    public void start() {
+        httpServer.start();
+    }
+
+    /**
+     * Stops server, waiting at most given number of seconds for exchanges in progress.
+     */
+    public void stop(int delaySeconds) {
+        httpServer.stop(delaySeconds);
+        microBatcher.stop();
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    public LatencyStats.Snapshot getStats() {
+        return latencyStats.snapshot();
+    }
+
+    public double getAverageBatchSize() {
+        return microBatcher.getAverageBatchSize();
+    }
+
+    private void categorize(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                fail(exchange, 405, "Use POST with image as body");
+                return;
+            }
+            if (getContentLength(exchange) > MAX_BODY_BYTES) {
+                fail(exchange, 413, "Body is bigger than " + MAX_BODY_BYTES + " bytes");
+                return;
+            }
+            byte[] bytes;
+            try (InputStream body = exchange.getRequestBody()) {
+                bytes = readBody(body);
+            }
+            if (bytes == null) {
+                fail(exchange, 413, "Body is bigger than " + MAX_BODY_BYTES + " bytes");
+                return;
+            }
+            BufferedImage image;
+            try {
+                image = ImageIO.read(new ByteArrayInputStream(bytes));
+            } catch (IOException e) {
+                //corrupt or truncated image
+                image = null;
+            }
+            if (image == null) {
+                fail(exchange, 400, "Body is not a supported image");
+                return;
+            }
+            MicroBatcher.BatchedResult batchedResult = microBatcher.submit(categorizer.preprocess(image)).get(RESULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            CategorizationResult result = batchedResult.getResult();
+            int index = batchedResult.getIndex();
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("category", result.getCategory(index));
+            response.put("score", result.getScore(index));
+            response.put("scores", result.getScores(index));
+            respond(exchange, 200, response);
+            latencyStats.record(System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(exchange, 503, "Server is stopping");
+        } catch (TimeoutException e) {
+            fail(exchange, 503, "Categorization timed out");
+        } catch (ExecutionException | RuntimeException e) {
+            fail(exchange, 500, String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void stats(HttpExchange exchange) throws IOException {
+        try {
+            LatencyStats.Snapshot snapshot = latencyStats.snapshot();
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("requests", snapshot.getRequests());
+            response.put("failures", snapshot.getFailures());
+            response.put("throughput", snapshot.getThroughput());
+            response.put("p50Millis", snapshot.getP50Millis());
+            response.put("p99Millis", snapshot.getP99Millis());
+            response.put("averageBatchSize", microBatcher.getAverageBatchSize());
+            String query = exchange.getRequestURI().getQuery();
+            if (query != null && query.contains("reset")) {
+                latencyStats.reset();
+            }
+            respond(exchange, 200, response);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    //declared length of request body, -1 if unknown
+    private static long getContentLength(HttpExchange exchange) {
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    //reads whole body, null if it is bigger than MAX_BODY_BYTES
+    private static byte[] readBody(InputStream body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            if (out.size() + read > MAX_BODY_BYTES) {
+                return null;
+            }
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private void fail(HttpExchange exchange, int status, String message) throws IOException {
+        latencyStats.recordFailure();
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("error", message);
+        respond(exchange, status, response);
+    }
+
+    private void respond(HttpExchange exchange, int status, Map<String, Object> response) throws IOException {
+        byte[] bytes = gson.toJson(response).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+}
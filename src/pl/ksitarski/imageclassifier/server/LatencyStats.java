@@ -0,0 +1,118 @@
+package pl.ksitarski.imageclassifier.server;
+
+import java.util.Arrays;
+
+/**
+ * Collects latencies of requests and calculates percentiles and throughput. Percentiles are calculated from the most
+ * recent requests only (window of fixed size), throughput from all requests since creation or last reset.
+ */
+public class LatencyStats {
+    private final long[] window; //latencies in nanoseconds, ring buffer
+    private int next = 0;
+    private int stored = 0;
+    private long count = 0;
+    private long failures = 0;
+    private long startNanos = System.nanoTime();
+
+    /**
+     * Constructor.
+     * @param windowSize number of most recent latencies used for percentiles
+     */
+    public LatencyStats(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size should be positive, was " + windowSize);
+        }
+        window = new long[windowSize];
+    }
+
+    /**
+     * Records latency of successful request.
+     */
+    public synchronized void record(long latencyNanos) {
+        window[next] = latencyNanos;
+        next = (next + 1) % window.length;
+        stored = Math.min(stored + 1, window.length);
+        count++;
+    }
+
+    /**
+     * Records failed request, it is not counted in latencies nor throughput.
+     */
+    public synchronized void recordFailure() {
+        failures++;
+    }
+
+    /**
+     * Returns snapshot of current statistics.
+     */
+    public synchronized Snapshot snapshot() {
+        long[] sorted = Arrays.copyOf(window, stored);
+        Arrays.sort(sorted);
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return new Snapshot(count, failures, seconds == 0 ? 0 : count / seconds, percentile(sorted, 0.5), percentile(sorted, 0.99));
+    }
+
+    /**
+     * Clears all statistics.
+     */
+    public synchronized void reset() {
+        next = 0;
+        stored = 0;
+        count = 0;
+        failures = 0;
+        startNanos = System.nanoTime();
+    }
+
+    //nearest rank percentile in milliseconds
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(rank, 0)] / 1e6;
+    }
+
+    /**
+     * Statistics at single point in time.
+     */
+    public static class Snapshot {
+        private final long requests;
+        private final long failures;
+        private final double throughput; //requests per second
+        private final double p50Millis;
+        private final double p99Millis;
+
+        Snapshot(long requests, long failures, double throughput, double p50Millis, double p99Millis) {
+            this.requests = requests;
+            this.failures = failures;
+            this.throughput = throughput;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public double getThroughput() {
+            return throughput;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Requests: %d, failed: %d, throughput: %.1f/s, p50: %.2f ms, p99: %.2f ms", requests, failures, throughput, p50Millis, p99Millis);
+        }
+    }
+}
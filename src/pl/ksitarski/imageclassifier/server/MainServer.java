@@ -0,0 +1,60 @@
+package pl.ksitarski.imageclassifier.server;
+
+import pl.ksitarski.imageclassifier.imageclassifier.Categorizer;
+import pl.ksitarski.imageclassifier.imageclassifier.Classifier;
+import pl.ksitarski.imageclassifier.imageclassifier.CompiledClassifier;
+import pl.ksitarski.imageclassifier.othertools.IO;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+
+import static pl.ksitarski.imageclassifier.neuralnetwork.LoggerSettings.*;
+
+/**
+ * Headless start of the application: serves categorization over HTTP, see InferenceServer.
+ * <p>
+ * Arguments: model file (compiled model or NNF, which is compiled on load), port (default 8080), max batch size
+ * (default 32), max wait in milliseconds (default 5), number of request threads (default 2 per processor).
+ * </p>
+ */
+public class MainServer {
+
+    /**
+     * Main function of headless server.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: MainServer <model file> [port] [max batch size] [max wait ms] [threads]");
+            System.exit(1);
+        }
+        File file = new File(args[0]);
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int maxBatchSize = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        long maxWaitMillis = args.length > 3 ? Long.parseLong(args[3]) : 5;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors() * 2;
+
+        Optional<Categorizer> categorizer = load(file);
+        if (!categorizer.isPresent()) {
+            System.err.println("Could not load model from " + file);
+            System.exit(1);
+        }
+        InferenceServer server = new InferenceServer(categorizer.get(), port, threads, maxBatchSize, maxWaitMillis);
+        server.start();
+        getLogger().log("Listening on port " + server.getPort() + ", max batch size " + maxBatchSize + ", max wait " + maxWaitMillis + " ms");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            getLogger().log(server.getStats() + String.format(", average batch size: %.1f", server.getAverageBatchSize()));
+        }));
+    }
+
+    //loads compiled model, or NNF which is compiled
+    private static Optional<Categorizer> load(File file) {
+        Optional<CompiledClassifier> model = IO.loadModel(file);
+        if (model.isPresent()) {
+            return Optional.of(model.get());
+        }
+        Optional<Classifier> classifier = IO.loadNnf(file);
+        return classifier.map(Classifier::compile);
+    }
+}
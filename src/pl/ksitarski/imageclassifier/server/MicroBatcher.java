@@ -0,0 +1,161 @@
+package pl.ksitarski.imageclassifier.server;
+
+import pl.ksitarski.imageclassifier.imageclassifier.CategorizationResult;
+import pl.ksitarski.imageclassifier.imageclassifier.Categorizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces concurrent categorization requests into batches. Single thread takes the first waiting request and then
+ * waits for more, until batch is full or the first request waited max wait time, and categorizes the whole batch with
+ * one pass through the network.
+ */
+public class MicroBatcher {
+    private final Categorizer categorizer;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean isRunning = true;
+
+    private long batches = 0;
+    private long batchedRequests = 0;
+
+    /**
+     * Constructor, starts batching thread.
+     * @param categorizer categorizer used for batches
+     * @param maxBatchSize biggest number of requests in batch
+     * @param maxWaitMillis longest time that first request of batch waits for other requests
+     */
+    public MicroBatcher(Categorizer categorizer, int maxBatchSize, long maxWaitMillis) {
+        if (maxBatchSize < 1 || maxWaitMillis < 0) {
+            throw new IllegalArgumentException("Max batch size should be positive and max wait not negative, were " + maxBatchSize + " and " + maxWaitMillis);
+        }
+        this.categorizer = categorizer;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        thread = new Thread(this::run, "micro-batcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues preprocessed image for categorization.
+     * @return future completed with result of the batch and index of the image in it
+     */
+    public CompletableFuture<BatchedResult> submit(double[] data) {
+        Request request = new Request(data);
+        queue.add(request);
+        //batching thread might have already failed remaining requests, so request added after stop is failed here
+        if (!isRunning && queue.remove(request)) {
+            request.future.completeExceptionally(new IllegalStateException("Micro batcher is stopped"));
+        }
+        return request.future;
+    }
+
+    /**
+     * Stops batching thread, requests that were not categorized yet fail.
+     */
+    public void stop() {
+        isRunning = false;
+        thread.interrupt();
+    }
+
+    /**
+     * Returns average number of requests per batch.
+     */
+    public synchronized double getAverageBatchSize() {
+        return batches == 0 ? 0 : (double) batchedRequests / batches;
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>(maxBatchSize);
+        List<double[]> data = new ArrayList<>(maxBatchSize);
+        try {
+            while (isRunning) {
+                batch.clear();
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() == maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    Request request = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (request == null) {
+                        break;
+                    }
+                    batch.add(request);
+                }
+                categorize(batch, data);
+            }
+        } catch (InterruptedException e) {
+            //stopped
+        } finally {
+            isRunning = false;
+            List<Request> remaining = new ArrayList<>(batch);
+            queue.drainTo(remaining);
+            for (Request request : remaining) {
+                request.future.completeExceptionally(new IllegalStateException("Micro batcher is stopped"));
+            }
+        }
+    }
+
+    private void categorize(List<Request> batch, List<double[]> data) {
+        data.clear();
+        for (Request request : batch) {
+            data.add(request.data);
+        }
+        try {
+            CategorizationResult result = categorizer.categorizeBatch(data);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(new BatchedResult(result, i));
+            }
+        } catch (Throwable e) {
+            for (Request request : batch) {
+                request.future.completeExceptionally(e);
+            }
+        }
+        synchronized (this) {
+            batches++;
+            batchedRequests += batch.size();
+        }
+        batch.clear();
+    }
+
+    /**
+     * Result of single request: result of the whole batch and index of request in it.
+     */
+    public static class BatchedResult {
+        private final CategorizationResult result;
+        private final int index;
+
+        BatchedResult(CategorizationResult result, int index) {
+            this.result = result;
+            this.index = index;
+        }
+
+        public CategorizationResult getResult() {
+            return result;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+    }
+
+    private static class Request {
+        private final double[] data;
+        private final CompletableFuture<BatchedResult> future = new CompletableFuture<>();
+
+        Request(double[] data) {
+            this.data = data;
+        }
+    }
+}
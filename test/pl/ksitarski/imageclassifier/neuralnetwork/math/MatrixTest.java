@@ -0,0 +1,31 @@
+package pl.ksitarski.imageclassifier.neuralnetwork.math;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MatrixTest {
+
+    @Test
+    public void biggestIdInRowOfNonPositiveValues() {
+        Matrix matrix = new Matrix(2, 3);
+        matrix.setRow(0, new double[]{-0.5, -0.1, -0.7});
+        matrix.setRow(1, new double[]{0, 0, 0});
+
+        assertEquals(1, matrix.getBiggestIdInRow(0));
+        assertEquals(0, matrix.getBiggestIdInRow(1));
+    }
+
+    @Test
+    public void biggestIdInRowOfView() {
+        Matrix matrix = new Matrix(3, 2, Precision.FLOAT);
+        matrix.setRow(0, new double[]{1, 2});
+        matrix.setRow(1, new double[]{-3, -4});
+        matrix.setRow(2, new double[]{6, 5});
+
+        Matrix view = matrix.getRowsView(1, 3);
+
+        assertEquals(0, view.getBiggestIdInRow(0));
+        assertEquals(0, view.getBiggestIdInRow(1));
+    }
+}
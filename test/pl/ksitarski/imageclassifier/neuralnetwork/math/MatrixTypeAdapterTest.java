@@ -0,0 +1,102 @@
+package pl.ksitarski.imageclassifier.neuralnetwork.math;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+import pl.ksitarski.imageclassifier.imageclassifier.Classifier;
+import pl.ksitarski.imageclassifier.neuralnetwork.helper.NeuralNetworkHelper;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class MatrixTypeAdapterTest {
+    //outputs of the network stored in baseline.nnf for its own training inputs, as calculated by the version that saved it
+    private static final double[][] BASELINE_OUTPUTS = {
+            {0.5615826762022629, 0.4384105480588172},
+            {0.5595831998715007, 0.4468587322827207},
+            {0.4843791092019396, 0.4981749569945046},
+            {0.49001035690116485, 0.49793489262004015}
+    };
+
+    private final Gson gson = new GsonBuilder().create();
+
+    @Test
+    public void readsMatrixSavedAsArrayOfRows() {
+        Matrix matrix = gson.fromJson("{\"height\":2,\"width\":3,\"matrix\":[[1,2,3],[4,5,6]]}", Matrix.class);
+
+        assertEquals(2, matrix.getHeight());
+        assertEquals(3, matrix.getWidth());
+        assertTrue(matrix.isContiguous());
+        assertArrayEquals(new double[]{1, 2, 3}, matrix.getRow(0), 0);
+        assertArrayEquals(new double[]{4, 5, 6}, matrix.getRow(1), 0);
+    }
+
+    @Test
+    public void loadsNnfSavedBeforeFlatMatrixStorage() throws Exception {
+        Classifier classifier;
+        try (Reader reader = baseline()) {
+            classifier = gson.fromJson(reader, Classifier.class);
+        }
+        NeuralNetworkHelper neuralNetworkHelper;
+        try (Reader reader = baseline()) {
+            JsonObject json = new JsonParser().parse(reader).getAsJsonObject();
+            neuralNetworkHelper = gson.fromJson(json.get("neuralNetworkHelper"), NeuralNetworkHelper.class);
+        }
+
+        Matrix input = classifier.getLearningCaseHelper().getInput();
+        assertArrayEquals(new double[]{0.8470588235294118, 0.8705882352941177, 0.7607843137254902, 0.7725490196078432},
+                input.getRow(0), 0);
+        Matrix output = neuralNetworkHelper.deduce(input);
+        for (int i = 0; i < BASELINE_OUTPUTS.length; i++) {
+            assertArrayEquals("input " + i, BASELINE_OUTPUTS[i], output.getRow(i), 1e-12);
+        }
+    }
+
+    @Test
+    public void writtenMatrixIsReadBack() {
+        Matrix matrix = new Matrix(3, 5).setRandom();
+
+        Matrix read = gson.fromJson(gson.toJson(matrix), Matrix.class);
+
+        assertSameValues(matrix, read);
+    }
+
+    @Test
+    public void writtenSinglePrecisionMatrixIsReadBack() {
+        Matrix matrix = new Matrix(3, 5, Precision.FLOAT).setRandom();
+
+        Matrix read = gson.fromJson(gson.toJson(matrix), Matrix.class);
+
+        assertEquals(Precision.FLOAT, read.getPrecision());
+        assertSameValues(matrix, read);
+    }
+
+    @Test
+    public void viewIsWrittenWithoutItsParentStorage() {
+        Matrix matrix = new Matrix(4, 3).setRandom();
+        Matrix view = matrix.getRowsView(1, 3);
+
+        Matrix read = gson.fromJson(gson.toJson(view), Matrix.class);
+
+        assertTrue(read.isContiguous());
+        assertSameValues(view, read);
+        assertEquals(6, gson.toJsonTree(view).getAsJsonObject().getAsJsonArray("data").size());
+    }
+
+    private Reader baseline() {
+        return new InputStreamReader(getClass().getResourceAsStream("baseline.nnf"), StandardCharsets.UTF_8);
+    }
+
+    private static void assertSameValues(Matrix expected, Matrix actual) {
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getWidth(), actual.getWidth());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            assertArrayEquals(expected.getRow(y), actual.getRow(y), 0);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package pl.ksitarski.imageclassifier.neuralnetwork.math;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that SIMD kernels give the same results as scalar code, within rounding differences caused by different
+ * order of additions and fused multiply-add. Lengths are odd, so that tail loops of SIMD kernels are used too.
+ */
+public class VectorKernelsTest {
+    private static final int[] LENGTHS = {1, 3, 7, 17, 33, 101};
+    private static final double DOUBLE_TOLERANCE = 1e-12;
+    private static final double FLOAT_TOLERANCE = 1e-5;
+
+    private final ScalarKernels scalar = new ScalarKernels();
+    private final SplittableRandom random = new SplittableRandom(11);
+
+    @Test
+    public void simdKernelsAgreeWithScalarKernelsInDoublePrecision() {
+        VectorKernels simd = simdKernels();
+        for (int length : LENGTHS) {
+            double[] a = randomDoubles(length + 2);
+            double[] b = randomDoubles(length + 3);
+            double value = random.nextDouble(-2, 2);
+
+            double[] expected = randomDoubles(length + 1);
+            double[] actual = expected.clone();
+            scalar.axpy(value, a, 2, expected, 1, length);
+            simd.axpy(value, a, 2, actual, 1, length);
+            assertClose("axpy " + length, expected, actual, DOUBLE_TOLERANCE);
+
+            assertClose("dot " + length, scalar.dot(a, 1, b, 3, length), simd.dot(a, 1, b, 3, length), DOUBLE_TOLERANCE * length);
+
+            expected = new double[length + 1];
+            actual = new double[length + 1];
+            scalar.subtract(a, 2, b, 1, expected, 1, length);
+            simd.subtract(a, 2, b, 1, actual, 1, length);
+            assertClose("subtract " + length, expected, actual, DOUBLE_TOLERANCE);
+
+            scalar.multiply(a, 2, b, 1, expected, 1, length);
+            simd.multiply(a, 2, b, 1, actual, 1, length);
+            assertClose("multiply " + length, expected, actual, DOUBLE_TOLERANCE);
+
+            scalar.scale(a, 1, value, expected, 0, length);
+            simd.scale(a, 1, value, actual, 0, length);
+            assertClose("scale " + length, expected, actual, DOUBLE_TOLERANCE);
+
+            scalar.sigmoid(a, 2, expected, 1, length);
+            simd.sigmoid(a, 2, actual, 1, length);
+            assertClose("sigmoid " + length, expected, actual, DOUBLE_TOLERANCE);
+
+            scalar.sigmoidDerivative(a, 2, expected, 1, length);
+            simd.sigmoidDerivative(a, 2, actual, 1, length);
+            assertClose("sigmoid derivative " + length, expected, actual, DOUBLE_TOLERANCE);
+        }
+    }
+
+    @Test
+    public void simdKernelsAgreeWithScalarKernelsInSinglePrecision() {
+        VectorKernels simd = simdKernels();
+        for (int length : LENGTHS) {
+            float[] a = randomFloats(length + 2);
+            float[] b = randomFloats(length + 3);
+            float value = (float) random.nextDouble(-2, 2);
+
+            float[] expected = randomFloats(length + 1);
+            float[] actual = expected.clone();
+            scalar.axpy(value, a, 2, expected, 1, length);
+            simd.axpy(value, a, 2, actual, 1, length);
+            assertClose("axpy " + length, expected, actual, FLOAT_TOLERANCE);
+
+            assertClose("dot " + length, scalar.dot(a, 1, b, 3, length), simd.dot(a, 1, b, 3, length), FLOAT_TOLERANCE * length);
+
+            expected = new float[length + 1];
+            actual = new float[length + 1];
+            scalar.subtract(a, 2, b, 1, expected, 1, length);
+            simd.subtract(a, 2, b, 1, actual, 1, length);
+            assertClose("subtract " + length, expected, actual, FLOAT_TOLERANCE);
+
+            scalar.multiply(a, 2, b, 1, expected, 1, length);
+            simd.multiply(a, 2, b, 1, actual, 1, length);
+            assertClose("multiply " + length, expected, actual, FLOAT_TOLERANCE);
+
+            scalar.scale(a, 1, value, expected, 0, length);
+            simd.scale(a, 1, value, actual, 0, length);
+            assertClose("scale " + length, expected, actual, FLOAT_TOLERANCE);
+
+            scalar.sigmoid(a, 2, expected, 1, length);
+            simd.sigmoid(a, 2, actual, 1, length);
+            assertClose("sigmoid " + length, expected, actual, FLOAT_TOLERANCE);
+
+            scalar.sigmoidDerivative(a, 2, expected, 1, length);
+            simd.sigmoidDerivative(a, 2, actual, 1, length);
+            assertClose("sigmoid derivative " + length, expected, actual, FLOAT_TOLERANCE);
+        }
+    }
+
+    @Test
+    public void matrixMathAgreesWithSimdEnabledAndDisabled() {
+        simdKernels();
+        for (Precision precision : Precision.values()) {
+            double tolerance = precision == Precision.FLOAT ? FLOAT_TOLERANCE : DOUBLE_TOLERANCE;
+            Matrix a = new Matrix(37, 53, precision).setRandom();
+            Matrix b = new Matrix(53, 29, precision).setRandom();
+            Matrix c = new Matrix(37, 29, precision).setRandom();
+            Matrix d = new Matrix(37, 29, precision).setRandom();
+            Matrix activations = NLMath.applyFunction(d);
+            try {
+                MatrixMath.setSimdEnabled(true);
+                Matrix[] simd = operations(a, b, c, d, activations);
+                MatrixMath.setSimdEnabled(false);
+                Matrix[] scalar = operations(a, b, c, d, activations);
+                for (int i = 0; i < simd.length; i++) {
+                    assertClose(precision + " operation " + i, scalar[i], simd[i], tolerance * a.getWidth());
+                }
+            } finally {
+                MatrixMath.setSimdEnabled(true);
+            }
+        }
+    }
+
+    //GEMM in all three layouts, elementwise operations and sigmoid with its derivative
+    private static Matrix[] operations(Matrix a, Matrix b, Matrix c, Matrix d, Matrix activations) {
+        return new Matrix[]{
+                MatrixMath.multiply(a, b),
+                MatrixMath.multiplyTransposeA(a, c),
+                MatrixMath.multiplyTransposeB(a, MatrixMath.transpose(b)),
+                MatrixMath.subtract(c, d),
+                MatrixMath.scalarMultiply(c, d),
+                MatrixMath.scale(c, 0.37),
+                NLMath.applyFunction(c),
+                NLMath.applyFunctionDerivative(activations)
+        };
+    }
+
+    private static VectorKernels simdKernels() {
+        assumeTrue(MatrixMath.isSimdAvailable());
+        MatrixMath.setSimdEnabled(true);
+        return MatrixMath.getVectorKernels();
+    }
+
+    private double[] randomDoubles(int length) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextDouble(-4, 4);
+        }
+        return values;
+    }
+
+    private float[] randomFloats(int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = (float) random.nextDouble(-4, 4);
+        }
+        return values;
+    }
+
+    private static void assertClose(String message, double expected, double actual, double tolerance) {
+        assertEquals(message, expected, actual, tolerance * Math.max(1, Math.abs(expected)));
+    }
+
+    private static void assertClose(String message, double[] expected, double[] actual, double tolerance) {
+        for (int i = 0; i < expected.length; i++) {
+            assertClose(message + " at " + i, expected[i], actual[i], tolerance);
+        }
+    }
+
+    private static void assertClose(String message, float[] expected, float[] actual, double tolerance) {
+        for (int i = 0; i < expected.length; i++) {
+            assertClose(message + " at " + i, expected[i], actual[i], tolerance);
+        }
+    }
+
+    private static void assertClose(String message, Matrix expected, Matrix actual, double tolerance) {
+        assertEquals(message + " height", expected.getHeight(), actual.getHeight());
+        assertEquals(message + " width", expected.getWidth(), actual.getWidth());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertClose(message + " at " + x + ", " + y, expected.get(x, y), actual.get(x, y), tolerance);
+            }
+        }
+    }
+}